@@ -0,0 +1,221 @@
+package com.untamedears.mustercull;
+
+import java.util.Arrays;
+
+/**
+ * Groups mob numbers by chunk, without boxing keys or allocating per mob.
+ *
+ * Chunks are found through an open addressing table of ChunkKey values.
+ * Each chunk is a bucket numbered in the order it was first seen, holding a
+ * linked list of entries threaded through int arrays. clear() keeps every
+ * array, so one instance can be reused from pass to pass.
+ */
+public class ChunkBuckets {
+
+	/**
+	 * The smallest table size to use.
+	 */
+	private static final int MINIMUM_CAPACITY = 16;
+
+	/**
+	 * Bucket number for each table slot, or -1 if the slot is empty.
+	 */
+	private int[] slots = new int[MINIMUM_CAPACITY];
+
+	/**
+	 * The ChunkKey of each bucket.
+	 */
+	private long[] bucketKeys = new long[MINIMUM_CAPACITY];
+
+	/**
+	 * The first entry of each bucket, or -1 if it has none.
+	 */
+	private int[] bucketHeads = new int[MINIMUM_CAPACITY];
+
+	/**
+	 * The number of entries in each bucket.
+	 */
+	private int[] bucketSizes = new int[MINIMUM_CAPACITY];
+
+	/**
+	 * The number of buckets in use.
+	 */
+	private int bucketCount = 0;
+
+	/**
+	 * The mob number held by each entry.
+	 */
+	private int[] entryMobs = new int[MINIMUM_CAPACITY];
+
+	/**
+	 * The next entry in the same bucket for each entry, or -1 at the end.
+	 */
+	private int[] entryNext = new int[MINIMUM_CAPACITY];
+
+	/**
+	 * The number of entries in use.
+	 */
+	private int entryCount = 0;
+
+	/**
+	 * Constructor which creates an empty set of buckets.
+	 */
+	public ChunkBuckets() {
+		Arrays.fill(this.slots, -1);
+	}
+
+	/**
+	 * Empties every bucket, keeping the arrays for reuse.
+	 */
+	public void clear() {
+		Arrays.fill(this.slots, -1);
+		this.bucketCount = 0;
+		this.entryCount = 0;
+	}
+
+	/**
+	 * Returns the table slot holding a key, or the empty slot where it would go.
+	 * @param key The ChunkKey to look for.
+	 * @return The index of the slot.
+	 */
+	private int slotOf(long key) {
+		int mask = this.slots.length - 1;
+		int slot = LongHashMap.hash(key) & mask;
+
+		while (this.slots[slot] != -1 && this.bucketKeys[this.slots[slot]] != key) {
+			slot = (slot + 1) & mask;
+		}
+
+		return slot;
+	}
+
+	/**
+	 * Adds a mob to the bucket for its chunk.
+	 * @param chunkX The x coordinate of the chunk.
+	 * @param chunkZ The z coordinate of the chunk.
+	 * @param mob The mob number to add.
+	 */
+	public void add(int chunkX, int chunkZ, int mob) {
+
+		long key = ChunkKey.of(chunkX, chunkZ);
+		int slot = slotOf(key);
+		int bucket = this.slots[slot];
+
+		if (bucket == -1) {
+			if ((this.bucketCount + 1) * 2 > this.slots.length) {
+				rehash(this.slots.length * 2);
+				slot = slotOf(key);
+			}
+
+			if (this.bucketCount == this.bucketKeys.length) {
+				int capacity = this.bucketCount * 2;
+				this.bucketKeys = Arrays.copyOf(this.bucketKeys, capacity);
+				this.bucketHeads = Arrays.copyOf(this.bucketHeads, capacity);
+				this.bucketSizes = Arrays.copyOf(this.bucketSizes, capacity);
+			}
+
+			bucket = this.bucketCount++;
+			this.bucketKeys[bucket] = key;
+			this.bucketHeads[bucket] = -1;
+			this.bucketSizes[bucket] = 0;
+			this.slots[slot] = bucket;
+		}
+
+		if (this.entryCount == this.entryMobs.length) {
+			int capacity = this.entryCount * 2;
+			this.entryMobs = Arrays.copyOf(this.entryMobs, capacity);
+			this.entryNext = Arrays.copyOf(this.entryNext, capacity);
+		}
+
+		int entry = this.entryCount++;
+		this.entryMobs[entry] = mob;
+		this.entryNext[entry] = this.bucketHeads[bucket];
+		this.bucketHeads[bucket] = entry;
+		this.bucketSizes[bucket]++;
+	}
+
+	/**
+	 * Resizes the table and puts every bucket back into it.
+	 * @param capacity The new table size, a power of two.
+	 */
+	private void rehash(int capacity) {
+		this.slots = new int[capacity];
+		Arrays.fill(this.slots, -1);
+
+		for (int bucket = 0; bucket < this.bucketCount; bucket++) {
+			this.slots[slotOf(this.bucketKeys[bucket])] = bucket;
+		}
+	}
+
+	/**
+	 * Returns the bucket for a chunk.
+	 * @param chunkX The x coordinate of the chunk.
+	 * @param chunkZ The z coordinate of the chunk.
+	 * @return The bucket number, or -1 if the chunk has no mobs.
+	 */
+	public int find(int chunkX, int chunkZ) {
+		return this.slots[slotOf(ChunkKey.of(chunkX, chunkZ))];
+	}
+
+	/**
+	 * Returns the number of buckets in use.
+	 * @return The number of buckets in use.
+	 */
+	public int getBucketCount() {
+		return this.bucketCount;
+	}
+
+	/**
+	 * Returns the chunk x coordinate of a bucket.
+	 * @param bucket The bucket number.
+	 * @return The x coordinate of the bucket's chunk.
+	 */
+	public int getChunkX(int bucket) {
+		return ChunkKey.getX(this.bucketKeys[bucket]);
+	}
+
+	/**
+	 * Returns the chunk z coordinate of a bucket.
+	 * @param bucket The bucket number.
+	 * @return The z coordinate of the bucket's chunk.
+	 */
+	public int getChunkZ(int bucket) {
+		return ChunkKey.getZ(this.bucketKeys[bucket]);
+	}
+
+	/**
+	 * Returns the number of mobs in a bucket.
+	 * @param bucket The bucket number.
+	 * @return The number of mobs in the bucket.
+	 */
+	public int getSize(int bucket) {
+		return this.bucketSizes[bucket];
+	}
+
+	/**
+	 * Returns the first entry of a bucket.
+	 * @param bucket The bucket number.
+	 * @return The first entry, or -1 if the bucket is empty.
+	 */
+	public int first(int bucket) {
+		return this.bucketHeads[bucket];
+	}
+
+	/**
+	 * Returns the entry after another in the same bucket.
+	 * @param entry The current entry.
+	 * @return The next entry, or -1 at the end of the bucket.
+	 */
+	public int next(int entry) {
+		return this.entryNext[entry];
+	}
+
+	/**
+	 * Returns the mob number held by an entry.
+	 * @param entry The entry.
+	 * @return The mob number.
+	 */
+	public int getMob(int entry) {
+		return this.entryMobs[entry];
+	}
+}
@@ -0,0 +1,51 @@
+package com.untamedears.mustercull;
+
+/**
+ * Packs chunk coordinates into a single long for use as a map key.
+ */
+public final class ChunkKey {
+
+	/**
+	 * This class only has static methods.
+	 */
+	private ChunkKey() {
+	}
+
+	/**
+	 * Packs chunk coordinates into a key.
+	 * @param chunkX The x coordinate of the chunk.
+	 * @param chunkZ The z coordinate of the chunk.
+	 * @return The packed key for the chunk.
+	 */
+	public static long of(int chunkX, int chunkZ) {
+		return (((long) chunkX) << 32) | (chunkZ & 0xffffffffL);
+	}
+
+	/**
+	 * Packs the chunk containing a block into a key.
+	 * @param blockX The x coordinate of the block.
+	 * @param blockZ The z coordinate of the block.
+	 * @return The packed key for the chunk containing the block.
+	 */
+	public static long ofBlock(int blockX, int blockZ) {
+		return of(blockX >> 4, blockZ >> 4);
+	}
+
+	/**
+	 * Returns the chunk x coordinate from a key.
+	 * @param key A packed chunk key.
+	 * @return The x coordinate of the chunk.
+	 */
+	public static int getX(long key) {
+		return (int) (key >> 32);
+	}
+
+	/**
+	 * Returns the chunk z coordinate from a key.
+	 * @param key A packed chunk key.
+	 * @return The z coordinate of the chunk.
+	 */
+	public static int getZ(long key) {
+		return (int) key;
+	}
+}
@@ -0,0 +1,137 @@
+package com.untamedears.mustercull;
+
+import java.util.Arrays;
+
+/**
+ * Sums per-chunk totals over square windows of chunks.
+ *
+ * The occupied chunks are sorted by x then z, with running totals kept in
+ * that order, so each row of a window is a contiguous run found with two
+ * binary searches. Summing a window costs a few searches per row however
+ * many mobs it holds, and empty chunks cost nothing.
+ */
+public class ChunkWindowSums {
+
+	/**
+	 * Occupied chunks, as sortable keys in ascending order.
+	 */
+	private final long[] keys;
+
+	/**
+	 * Running score totals; scores[i] is the sum over keys before i.
+	 */
+	private final long[] scores;
+
+	/**
+	 * Running count totals; counts[i] is the sum over keys before i.
+	 */
+	private final int[] counts;
+
+	/**
+	 * Constructor which sorts and totals the occupied chunks.
+	 * @param chunks The mobs grouped by chunk; each chunk's count is its number of mobs.
+	 * @param chunkScores The score of each chunk, by bucket number.
+	 */
+	public ChunkWindowSums(ChunkBuckets chunks, int[] chunkScores) {
+
+		int size = chunks.getBucketCount();
+		this.keys = new long[size];
+		this.scores = new long[size + 1];
+		this.counts = new int[size + 1];
+
+		for (int bucket = 0; bucket < size; bucket++) {
+			this.keys[bucket] = sortKey(chunks.getChunkX(bucket), chunks.getChunkZ(bucket));
+		}
+
+		Arrays.sort(this.keys);
+
+		for (int i = 0; i < size; i++) {
+			int bucket = chunks.find(getChunkX(i), getChunkZ(i));
+			this.scores[i + 1] = this.scores[i] + chunkScores[bucket];
+			this.counts[i + 1] = this.counts[i] + chunks.getSize(bucket);
+		}
+	}
+
+	/**
+	 * Packs chunk coordinates into a key which sorts by x then z.
+	 * @param chunkX The x coordinate of the chunk.
+	 * @param chunkZ The z coordinate of the chunk.
+	 * @return The sortable key for the chunk.
+	 */
+	private static long sortKey(int chunkX, int chunkZ) {
+		return (((long) chunkX) << 32) | ((chunkZ ^ Integer.MIN_VALUE) & 0xffffffffL);
+	}
+
+	/**
+	 * Returns the number of occupied chunks.
+	 * @return The number of occupied chunks.
+	 */
+	public int size() {
+		return this.keys.length;
+	}
+
+	/**
+	 * Returns the x coordinate of an occupied chunk.
+	 * @param i The position of the chunk in sorted order.
+	 * @return The x coordinate of the chunk.
+	 */
+	public int getChunkX(int i) {
+		return (int) (this.keys[i] >> 32);
+	}
+
+	/**
+	 * Returns the z coordinate of an occupied chunk.
+	 * @param i The position of the chunk in sorted order.
+	 * @return The z coordinate of the chunk.
+	 */
+	public int getChunkZ(int i) {
+		return ((int) this.keys[i]) ^ Integer.MIN_VALUE;
+	}
+
+	/**
+	 * Sums the chunks in a square window.
+	 * @param chunkX The x coordinate of the center chunk.
+	 * @param chunkZ The z coordinate of the center chunk.
+	 * @param radius The number of chunks from the center to each edge.
+	 * @param out Receives the summed score in out[0] and count in out[1].
+	 */
+	public void sumWindow(int chunkX, int chunkZ, int radius, long[] out) {
+
+		long score = 0;
+		long count = 0;
+
+		for (int x = chunkX - radius; x <= chunkX + radius; x++) {
+			int from = lowerBound(sortKey(x, chunkZ - radius));
+			int to = lowerBound(sortKey(x, chunkZ + radius) + 1);
+
+			score += this.scores[to] - this.scores[from];
+			count += this.counts[to] - this.counts[from];
+		}
+
+		out[0] = score;
+		out[1] = count;
+	}
+
+	/**
+	 * Returns the position of the first key not less than a key.
+	 * @param key The key to search for.
+	 * @return The position of the first key not less than key.
+	 */
+	private int lowerBound(long key) {
+		int low = 0;
+		int high = this.keys.length;
+
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+
+			if (this.keys[mid] < key) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+}
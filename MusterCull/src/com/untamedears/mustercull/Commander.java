@@ -1,10 +1,12 @@
 package com.untamedears.mustercull;
 
+import org.bukkit.World;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Player;
+import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
 
 /**
  * Handles commands from players or server console users.
@@ -78,7 +80,8 @@ public class Commander implements CommandExecutor {
 	
 
 	/**
-	 * Command handler which allows changing the culling strategy between priority and random.
+	 * Command handler which allows changing the culling strategy, for all
+	 * worlds or one world.
 	 * @param sender A reference to a Bukkit CommandSender for this handler.
 	 * @param argv A list of arguments for this handler.
 	 * @return Whether or not this event was handled and should be canceled.
@@ -89,16 +92,30 @@ public class Commander implements CommandExecutor {
 			return false;
 		}
 		
-		if (!(argv[0].toUpperCase().equals("RANDOM") || argv[0].toUpperCase().equals("PRIORITY")))
+		String world = argv.length >= 2 ? argv[1] : null;
+		
+		if (world != null && this.pluginInstance.getServer().getWorld(world) == null)
+		{
+			sender.sendMessage("MusterCull: unknown world '" + world + "'.  No changes made.");
+			return true;
+		}
+		
+		if (GlobalCullCullingStrategyType.fromName(argv[0]) == null && !(world != null && argv[0].equalsIgnoreCase("DEFAULT")))
 		{
 			sender.sendMessage("MusterCull: unknown culling strategy '" + argv[0] + "'.  No changes made.");
 			return true;
 		}
-		else
+		
+		this.pluginInstance.setHardCapCullingStrategy(argv[0].toUpperCase(), world);
+		
+		if (world == null)
 		{
-			this.pluginInstance.setHardCapCullingStrategy(argv[0].toUpperCase());
 			sender.sendMessage("MusterCull: Hard Cap Culling strategy changed to '" + argv[0] + "'.");
 		}
+		else
+		{
+			sender.sendMessage("MusterCull: Hard Cap Culling strategy for " + world + " changed to '" + argv[0] + "'.");
+		}
 		return true;
 	}
 
@@ -269,11 +286,40 @@ public class Commander implements CommandExecutor {
 				break;
 			}
 			else {
-				sender.sendMessage("Player " + status.getEntity().getName() + " surrounded by " + status.getNearbyEntityCount() + " entities.");
+				sender.sendMessage("Player " + status.getEntity().getName() + " surrounded by " + status.getNearbyEntityCount() + " mobs.");
 				reported = true;
 			}
 		}
 		
+		for (SpawnerRegistry.Spawner spawner : this.pluginInstance.getHottestSpawners(3)) {
+			if (spawner.getRecentOutput() > 0) {
+				sender.sendMessage("Spawner " + spawner.getType() + " at " + spawner.getWorld() + " (" + spawner.getX() + ", " + spawner.getY() + ", " + spawner.getZ() + ") recently produced " + spawner.getRecentOutput() + " mobs, throttled " + spawner.getThrottled() + ".");
+				reported = true;
+			}
+		}
+		
+		SpawnRateTracker rates = this.pluginInstance.getSpawnRateTracker();
+		long tick = this.pluginInstance.getCurrentTick();
+		
+		for (World world : this.pluginInstance.getServer().getWorlds()) {
+			double spawnRate = rates.getSpawnRate(world, tick);
+			
+			if (spawnRate * 20 < 0.01) {
+				continue;
+			}
+			
+			SpawnReason topReason = null;
+			
+			for (SpawnReason reason : SpawnReason.values()) {
+				if (topReason == null || rates.getSpawnRate(world, reason, tick) > rates.getSpawnRate(world, topReason, tick)) {
+					topReason = reason;
+				}
+			}
+			
+			sender.sendMessage(String.format("World %s is spawning %.2f mobs a second, mostly %s, and losing %.2f a second.", world.getName(), spawnRate * 20, topReason, rates.getDeathRate(world, tick) * 20));
+			reported = true;
+		}
+		
 		if (this.pluginInstance.getHardCapStatistics() != null)
 		{
 			sender.sendMessage(this.pluginInstance.getHardCapStatistics());
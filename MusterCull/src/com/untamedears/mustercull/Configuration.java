@@ -1,5 +1,6 @@
 package com.untamedears.mustercull;
 
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.entity.EntityType;
 import org.bukkit.plugin.java.JavaPlugin;
@@ -30,6 +31,21 @@ public class Configuration {
 	 */
 	private Map<EntityType, List<ConfigurationLimit>> mobLimits = new HashMap<EntityType, List<ConfigurationLimit>>();
 	
+	/**
+	 * Mob limits compiled for lookup, replaced as a whole whenever a limit changes.
+	 */
+	private volatile LimitTable limitTable = LimitTable.EMPTY;
+	
+	/**
+	 * Cull priorities for the hard cap, replaced as a whole when reloaded.
+	 */
+	private volatile CullPriorityTable cullPriorityTable = CullPriorityTable.DEFAULT;
+	
+	/**
+	 * Which mob types count towards the hostile cull, replaced as a whole when reloaded.
+	 */
+	private volatile HostileTable hostileTable = HostileTable.DEFAULT;
+	
 	/**
 	 * Whether or not we have limits with CullType DAMAGE.
 	 * 
@@ -56,6 +72,16 @@ public class Configuration {
 	 */
 	private int damageCalls = 1;
 	
+	/**
+	 * Most crowded entities to roll damage for each time the damage laborer starts a round.
+	 */
+	private int damageMaxPerRound = 1;
+	
+	/**
+	 * Number of nanoseconds the damage laborer may spend each tick.
+	 */
+	private long damageTickBudget = 1000000L;
+	
 	/**
 	 * Percent chance that a mob will be damaged when crowded.
 	 */
@@ -85,11 +111,101 @@ public class Configuration {
 	 * How many mobs permitted less of the maximum, per player.
 	 */
 	private int playerMultiplier = 5;
+	
+	/**
+	 * Percent of the hard mob limit the hard cap culls down to once over it.
+	 */
+	private int hardCapCullToPercent = 95;
+	
+	/**
+	 * Percent of the hard mob limit the mob count must fall to before spawns resume once stopped.
+	 */
+	private int hardCapResumeSpawnPercent = 90;
 
     /**
      * Number of ticks between calls to the living entity hard cap (HardCapLaborer).
      */
     private long ticksBetweenHardCap = 40L;
+
+    /**
+     * Number of ticks a culled mob stops counting towards the caps while its death is awaited.
+     */
+    private long hardCapPendingDeathTicks = 100L;
+
+    /**
+     * Maximum number of mobs the hard cap kills in a tick.
+     */
+    private int hardCapKillsPerTick = 50;
+
+    /**
+     * Number of nanoseconds the hard cap may spend killing mobs each tick.
+     */
+    private long hardCapTickBudget = 2000000L;
+
+    /**
+     * Hard mob caps for particular worlds, by world name.
+     */
+    private Map<String, WorldMobCap> worldMobCaps = new HashMap<String, WorldMobCap>();
+
+    /**
+     * Maximum number of worlds over their own cap the hard cap culls in a pass.
+     */
+    private int hardCapWorldsPerPass = 1;
+
+    /**
+     * Number of ticks between corrections of the live mob counts (MobCountLaborer).
+     */
+    private long ticksBetweenMobCount = 200L;
+
+    /**
+     * Number of ticks between reconcile passes over the spatial entity index (EntityIndexLaborer).
+     */
+    private long ticksBetweenIndexRebuild = 20L;
+
+    /**
+     * Number of ticks a SPAWN or SPAWNER rejection is remembered for a chunk.
+     */
+    private long spawnVerdictTicks = 40L;
+
+    /**
+     * Percent of a hard cap the projected mob count must reach before spawns are admitted at random.
+     */
+    private int spawnAdmissionStartPercent = 90;
+
+    /**
+     * Number of ticks ahead the mob count is projected when admitting spawns.
+     */
+    private long spawnAdmissionHorizonTicks = 100L;
+
+    /**
+     * Number of ticks after which a spawn or death counts half as much in the average rates.
+     */
+    private long spawnRateHalfLifeTicks = 200L;
+
+    /**
+     * Number of ticks between summaries of cancelled spawns (SpawnCancelLaborer).
+     */
+    private long ticksBetweenSpawnCancelSummary = 1200L;
+
+    /**
+     * Number of busiest chunks to list in each summary of cancelled spawns.
+     */
+    private int spawnCancelSummaryChunks = 5;
+
+    /**
+     * Whether to log every cancelled spawn rather than only summaries.
+     */
+    private boolean spawnCancelDebug = false;
+
+    /**
+     * Number of ticks for a spawner to earn back one mob under SPAWNER culling.
+     */
+    private long spawnerTicksPerSpawn = 100L;
+
+    /**
+     * Number of ticks over which a spawner's recent output count halves.
+     */
+    private long spawnerOutputWindow = 1200L;
 	
     /**
      * Whether to perform the monster cull pass to keep them within world spawn limits.
@@ -121,11 +237,36 @@ public class Configuration {
 	 */
 	private int hardCapCullingPriorityStrategyPenaltyMobPercent = 100;
 	
+	/**
+	 * Maximum number of super-chunks a penalty purge may target in one pass.
+	 */
+	private int hardCapPenaltySuperChunks = 4;
+	
 	/**
 	 * Culling strategy for hard-cap culling.  RANDOM or PRIORITY
 	 */
 	private String hardCapCullingStrategy = "RANDOM";
 	
+	/**
+	 * How hard-cap culling gets rid of the mobs each strategy chooses.
+	 */
+	private Map<GlobalCullCullingStrategyType, CullAction> hardCapCullActions = new EnumMap<GlobalCullCullingStrategyType, CullAction>(GlobalCullCullingStrategyType.class);
+	
+	/**
+	 * How hard-cap culling gets rid of mobs of each cull priority whatever the strategy, or null to leave it to the strategy.
+	 */
+	private CullAction[] priorityCullActions = new CullAction[CullPriorityTable.TRANSIENT + 1];
+	
+	/**
+	 * Culling strategies for hard-cap culling in particular worlds, by world name.
+	 */
+	private Map<String, String> worldHardCapCullingStrategies = new HashMap<String, String>();
+	
+	/**
+	 * Whether RANDOM hard-cap culling favours mobs in crowded chunks.
+	 */
+	private boolean hardCapRandomDensityWeighting = false;
+	
 	/**
 	 * Constructor which stores a reference to the Bukkit JavaPlugin we are using.
 	 * @param plugin A reference to a Bukkit JavaPlugin.
@@ -144,6 +285,8 @@ public class Configuration {
 		this.setDamage(config.getInt("damage"));
 		this.setDamageChance(config.getInt("damage_chance"));
 		this.setDamageCalls(config.getInt("damage_count"));
+		this.setDamageMaxPerRound(config.getInt("damage_max_per_round"));
+		this.setDamageTickBudgetMicros(config.getInt("damage_tick_budget_micros"));
 		this.setTicksBetweenDamage(config.getInt("ticks_between_damage"));
 		this.setMobLimit(config.getInt("mob_limit"));
 		this.setMobLimitPercent(config.getInt("mob_limit_percent"));
@@ -154,9 +297,88 @@ public class Configuration {
 		this.setEnableMonsterCullToSpawn(config.getBoolean("enable_monster_cull_to_spawn"));
 		this.setMaxMob(config.getInt("mob_max_mob"));
 		this.setPlayerMultiplier(config.getInt("mob_player_multiplier"));
+		this.setHardCapCullToPercent(config.getInt("hard_cap_cull_to_percent"));
+		this.setHardCapResumeSpawnPercent(config.getInt("hard_cap_resume_spawn_percent"));
         this.setTicksBetweenHardCap(config.getInt("ticks_between_hard_cap"));
+        this.setHardCapPendingDeathTicks(config.getInt("hard_cap_pending_death_ticks"));
+        this.setHardCapKillsPerTick(config.getInt("hard_cap_kills_per_tick"));
+        this.setHardCapWorldsPerPass(config.getInt("hard_cap_worlds_per_pass"));
+        
+        this.worldMobCaps.clear();
+        
+        if (config.isConfigurationSection("world_mob_limits")) {
+        	ConfigurationSection worlds = config.getConfigurationSection("world_mob_limits");
+        	
+        	for (String world : worlds.getKeys(false)) {
+        		ConfigurationSection limit = worlds.getConfigurationSection(world);
+        		
+        		if (limit == null || !limit.contains("max_mob")) {
+        			this.pluginInstance.getLogger().warning("Missing max_mob in world_mob_limits for " + world + ".");
+        			continue;
+        		}
+        		
+        		this.setWorldMobCap(world, new WorldMobCap(limit.getInt("max_mob"), limit.getInt("player_multiplier", 0)));
+        	}
+        }
+        this.setHardCapTickBudgetMicros(config.getInt("hard_cap_tick_budget_micros"));
+        this.setTicksBetweenMobCount(config.getInt("ticks_between_mob_count"));
+        this.setTicksBetweenIndexRebuild(config.getInt("ticks_between_index_rebuild"));
+        this.setSpawnVerdictTicks(config.getInt("spawn_verdict_ticks"));
+        this.setSpawnAdmissionStartPercent(config.getInt("spawn_admission_start_percent"));
+        this.setSpawnAdmissionHorizonTicks(config.getInt("spawn_admission_horizon_ticks"));
+        this.setSpawnRateHalfLifeTicks(config.getInt("spawn_rate_half_life_ticks"));
+        this.setTicksBetweenSpawnCancelSummary(config.getInt("ticks_between_spawn_cancel_summary"));
+        this.setSpawnCancelSummaryChunks(config.getInt("spawn_cancel_summary_chunks"));
+        this.setSpawnCancelDebug(config.getBoolean("spawn_cancel_debug"));
+        this.setSpawnerTicksPerSpawn(config.getInt("spawner_ticks_per_spawn"));
+        this.setSpawnerOutputWindow(config.getInt("spawner_output_window"));
         this.setHardCapCullingStrategy(config.getString("hard_cap_culling_strategy"));
+        
+        this.hardCapCullActions.clear();
+        
+        if (config.isConfigurationSection("hard_cap_cull_actions")) {
+        	ConfigurationSection actions = config.getConfigurationSection("hard_cap_cull_actions");
+        	
+        	for (String strategy : actions.getKeys(false)) {
+        		GlobalCullCullingStrategyType type = GlobalCullCullingStrategyType.fromName(strategy);
+        		
+        		if (type == null) {
+        			this.pluginInstance.getLogger().warning("Unrecognized strategy '" + strategy + "' in hard_cap_cull_actions.");
+        			continue;
+        		}
+        		
+        		this.setHardCapCullAction(type, actions.getString(strategy));
+        	}
+        }
+        
+        Arrays.fill(this.priorityCullActions, null);
+        
+        if (config.isConfigurationSection("hard_cap_priority_cull_actions")) {
+        	ConfigurationSection actions = config.getConfigurationSection("hard_cap_priority_cull_actions");
+        	
+        	for (String priority : actions.getKeys(false)) {
+        		try {
+        			this.setPriorityCullAction(Integer.parseInt(priority.trim()), actions.getString(priority));
+        		}
+        		catch (NumberFormatException e) {
+        			this.pluginInstance.getLogger().warning("Unrecognized priority '" + priority + "' in hard_cap_priority_cull_actions.");
+        		}
+        	}
+        }
+        
+        this.worldHardCapCullingStrategies.clear();
+        
+        if (config.isConfigurationSection("hard_cap_world_culling_strategies")) {
+        	ConfigurationSection worlds = config.getConfigurationSection("hard_cap_world_culling_strategies");
+        	
+        	for (String world : worlds.getKeys(false)) {
+        		this.setHardCapCullingStrategy(worlds.getString(world), world);
+        	}
+        }
+        
+        this.setHardCapRandomDensityWeighting(config.getBoolean("hard_cap_random_density_weighting"));
         this.setHardCapCullingPriorityStrategyPenaltyMobPercent(config.getInt("hard_cap_culling_priority_strategy_penalty_mob_percent"));
+        this.setHardCapPenaltySuperChunks(config.getInt("hard_cap_penalty_super_chunks"));
 						
 		List<?> list;
 				
@@ -193,13 +415,128 @@ public class Configuration {
 	            int range = (Integer)map.get("range");
 	            
 	            
-	            setLimit(type, new ConfigurationLimit(limit, culling, range));
+	            putLimit(type, new ConfigurationLimit(limit, culling, range));
 	        }
 		}
 		
+		// Publish the limits once, after reading every one.
+		this.limitTable = LimitTable.compile(this.mobLimits);
+		
+		list = config.getList("cull_priority_rules");
+		
+		if (list != null) {
+			CullPriorityTable.Builder rules = new CullPriorityTable.Builder();
+			
+			for (Object obj : list) {
+				
+				if (!(obj instanceof Map)) {
+					this.pluginInstance.getLogger().warning("Possible bad cull priority rule in configuration file.");
+					continue;
+				}
+				
+				Map<?, ?> map = (Map<?, ?>) obj;
+				
+				EntityType type = map.get("type") == null ? null : entityTypeFromName(map.get("type").toString().trim());
+				
+				if (type == null) {
+					this.pluginInstance.getLogger().warning("Unrecognized type '" + map.get("type") + "' in cull priority rule.");
+					continue;
+				}
+				
+				CullPriorityCondition condition = CullPriorityCondition.ALWAYS;
+				
+				if (map.get("condition") != null) {
+					condition = CullPriorityCondition.fromName(map.get("condition").toString().trim());
+					
+					if (condition == null) {
+						this.pluginInstance.getLogger().warning("Unrecognized condition '" + map.get("condition") + "' in cull priority rule.");
+						continue;
+					}
+				}
+				
+				if (!(map.get("priority") instanceof Integer)) {
+					this.pluginInstance.getLogger().warning("Missing priority in cull priority rule for " + type + ".");
+					continue;
+				}
+				
+				int priority = (Integer) map.get("priority");
+				
+				if (priority < 1 || priority > CullPriorityTable.TRANSIENT) {
+					this.pluginInstance.getLogger().warning("Cull priority for " + type + " must be between 1 and " + CullPriorityTable.TRANSIENT + ".");
+					continue;
+				}
+				
+				rules.add(type, condition, priority);
+			}
+			
+			this.cullPriorityTable = rules.build();
+		}
+		
+		HostileTable.Builder hostileClasses = new HostileTable.Builder();
+		
+		if (config.isConfigurationSection("hostile_classes")) {
+			ConfigurationSection section = config.getConfigurationSection("hostile_classes");
+			
+			for (String name : section.getKeys(false)) {
+				EntityType type = entityTypeFromName(name.trim());
+				
+				if (type == null) {
+					this.pluginInstance.getLogger().warning("Unrecognized type '" + name + "' in hostile_classes.");
+					continue;
+				}
+				
+				HostileClass hostileClass = HostileClass.fromName(section.getString(name));
+				
+				if (hostileClass == null) {
+					this.pluginInstance.getLogger().warning("hostile_classes for " + type + " not an allowed value (needs HOSTILE, EXEMPT or PASSIVE - has " + section.getString(name) + ".");
+					continue;
+				}
+				
+				hostileClasses.set(type, hostileClass);
+			}
+		}
+		
+		this.hostileTable = hostileClasses.build();
+		
 		this.dirty = false;
 	}
 
+	/**
+	 * Returns the EntityType for a mob name or an EntityType constant name.
+	 * @param name The name to look up.
+	 * @return The EntityType, or null if the name is not recognized.
+	 */
+	private static EntityType entityTypeFromName(String name) {
+		EntityType type = EntityType.fromName(name);
+		
+		if (type == null) {
+			try {
+				type = EntityType.valueOf(name.toUpperCase());
+			}
+			catch (IllegalArgumentException e) {
+				return null;
+			}
+		}
+		
+		return type;
+	}
+
+	/**
+	 * Returns the cull priorities for the hard cap.
+	 * @return The cull priority table.
+	 */
+	public CullPriorityTable getCullPriorityTable() {
+		return this.cullPriorityTable;
+	}
+
+	/**
+	 * Returns which mob types count towards the hostile cull.
+	 * @return The hostile classification table.
+	 */
+	public HostileTable getHostileTable() {
+		return this.hostileTable;
+	}
+
 	private void setHardCapCullingPriorityStrategyPenaltyMobPercent(int perc) {
 		hardCapCullingPriorityStrategyPenaltyMobPercent = perc;
 	}
@@ -207,6 +544,29 @@ public class Configuration {
 	public float getHardCapCullingPriorityStrategyPenaltyMobPercent() {
 		return hardCapCullingPriorityStrategyPenaltyMobPercent / 100.f ;
 	}
+	
+	/**
+	 * Returns the maximum number of super-chunks a penalty purge may target in one pass.
+	 * @return maximum number of penalty super-chunks per pass.
+	 */
+	public int getHardCapPenaltySuperChunks() {
+		return this.hardCapPenaltySuperChunks;
+	}
+	
+	/**
+	 * Sets the maximum number of super-chunks a penalty purge may target in one pass.
+	 * @param superChunks Maximum number of penalty super-chunks per pass.
+	 */
+	public void setHardCapPenaltySuperChunks(int superChunks) {
+		
+		if (superChunks < 1) {
+			this.pluginInstance.getLogger().warning("hard_cap_penalty_super_chunks is < 1, ignoring this and setting to 1.");
+			superChunks = 1;
+		}
+		
+		this.hardCapPenaltySuperChunks = superChunks;
+		this.dirty = true;
+	}
 
 	/**
 	 * Saves configuration values to the supplied plug-in instance.
@@ -222,6 +582,8 @@ public class Configuration {
 		config.set("damage", this.damage);
 		config.set("damage_chance", this.damageChance);
 		config.set("damage_count", this.damageCalls);
+		config.set("damage_max_per_round", this.damageMaxPerRound);
+		config.set("damage_tick_budget_micros", this.damageTickBudget / 1000L);
 		config.set("ticks_between_damage", this.ticksBetweenDamage);
 		config.set("mob_limit", this.mobLimit);
 		config.set("mob_limit_percent", this.mobLimitPercent);
@@ -232,9 +594,58 @@ public class Configuration {
 		config.set("max_monster_cull_per_pass", this.maximumMonsterCullPerPass);
 		config.set("mob_max_mob", this.maxMob);
 		config.set("mob_player_multiplier", this.playerMultiplier);
+		config.set("hard_cap_cull_to_percent", this.hardCapCullToPercent);
+		config.set("hard_cap_resume_spawn_percent", this.hardCapResumeSpawnPercent);
         config.set("ticks_between_hard_cap", this.ticksBetweenHardCap);
+        config.set("hard_cap_pending_death_ticks", this.hardCapPendingDeathTicks);
+        config.set("hard_cap_kills_per_tick", this.hardCapKillsPerTick);
+        config.set("hard_cap_worlds_per_pass", this.hardCapWorldsPerPass);
+        
+        Map<String, Object> worldLimits = new HashMap<String, Object>();
+        
+        for (Map.Entry<String, WorldMobCap> entry : this.worldMobCaps.entrySet()) {
+        	Map<String, Object> limit = new HashMap<String, Object>();
+        	limit.put("max_mob", entry.getValue().getMaxMob());
+        	limit.put("player_multiplier", entry.getValue().getPlayerMultiplier());
+        	worldLimits.put(entry.getKey(), limit);
+        }
+        
+        config.set("world_mob_limits", worldLimits);
+        config.set("hard_cap_tick_budget_micros", this.hardCapTickBudget / 1000L);
+        config.set("ticks_between_mob_count", this.ticksBetweenMobCount);
+        config.set("ticks_between_index_rebuild", this.ticksBetweenIndexRebuild);
+        config.set("spawn_verdict_ticks", this.spawnVerdictTicks);
+        config.set("spawn_admission_start_percent", this.spawnAdmissionStartPercent);
+        config.set("spawn_admission_horizon_ticks", this.spawnAdmissionHorizonTicks);
+        config.set("spawn_rate_half_life_ticks", this.spawnRateHalfLifeTicks);
+        config.set("ticks_between_spawn_cancel_summary", this.ticksBetweenSpawnCancelSummary);
+        config.set("spawn_cancel_summary_chunks", this.spawnCancelSummaryChunks);
+        config.set("spawn_cancel_debug", this.spawnCancelDebug);
+        config.set("spawner_ticks_per_spawn", this.spawnerTicksPerSpawn);
+        config.set("spawner_output_window", this.spawnerOutputWindow);
         config.set("hard_cap_culling_strategy", this.hardCapCullingStrategy);
+        config.set("hard_cap_world_culling_strategies", this.worldHardCapCullingStrategies);
+        
+        Map<String, String> actions = new HashMap<String, String>();
+        
+        for (Map.Entry<GlobalCullCullingStrategyType, CullAction> entry : this.hardCapCullActions.entrySet()) {
+        	actions.put(entry.getKey().name(), entry.getValue().name());
+        }
+        
+        config.set("hard_cap_cull_actions", actions);
+        
+        Map<String, String> priorityActions = new HashMap<String, String>();
+        
+        for (int priority = 0; priority < this.priorityCullActions.length; priority++) {
+        	if (this.priorityCullActions[priority] != null) {
+        		priorityActions.put(Integer.toString(priority), this.priorityCullActions[priority].name());
+        	}
+        }
+        
+        config.set("hard_cap_priority_cull_actions", priorityActions);
+        config.set("hard_cap_random_density_weighting", this.hardCapRandomDensityWeighting);
         config.set("hard_cap_culling_priority_strategy_penalty_mob_percent", this.hardCapCullingPriorityStrategyPenaltyMobPercent);
+        config.set("hard_cap_penalty_super_chunks", this.hardCapPenaltySuperChunks);
 				
 		this.pluginInstance.saveConfig();
 		
@@ -274,6 +685,18 @@ public class Configuration {
 	 * @param limit The limit for the entity type.
 	 */
 	public void setLimit(EntityType type, ConfigurationLimit limit) {
+		putLimit(type, limit);
+		this.limitTable = LimitTable.compile(this.mobLimits);
+	}
+	
+	/**
+	 * Stores the ConfigurationLimit for the specified mob type without
+	 * publishing a new limit table.
+	 * 
+	 * @param type The type of entity to set a ConfigurationLimit for.
+	 * @param limit The limit for the entity type.
+	 */
+	private void putLimit(EntityType type, ConfigurationLimit limit) {
 		
 		switch (limit.getCulling()) {
 		case DAMAGE:
@@ -285,30 +708,19 @@ public class Configuration {
 			break;
 		}
 		
+		// Replace rather than edit, since the old limits may still be in use.
+		List<ConfigurationLimit> otherLimits = new ArrayList<ConfigurationLimit>();
+		
 		if (mobLimits.containsKey(type)) {
-			List<ConfigurationLimit> otherLimits = mobLimits.get(type);
-			
-			boolean foundOneToEdit = false;
-			
-			for (ConfigurationLimit otherLimit : otherLimits) {
-				if (0 == otherLimit.getCulling().compareTo(limit.getCulling())) {
-					otherLimit.setLimit(limit.getLimit());
-					otherLimit.setRange(limit.getRange());
-					
-					foundOneToEdit = true;
-					break;
+			for (ConfigurationLimit otherLimit : mobLimits.get(type)) {
+				if (otherLimit.getCulling() != limit.getCulling()) {
+					otherLimits.add(otherLimit);
 				}
 			}
-			
-			if (!foundOneToEdit) {
-				otherLimits.add(limit);
-			}
-		}
-		else {
-			List<ConfigurationLimit> otherLimits = new ArrayList<ConfigurationLimit>();
-			otherLimits.add(limit);
-			mobLimits.put(type, otherLimits);
 		}
+		
+		otherLimits.add(limit);
+		mobLimits.put(type, Collections.unmodifiableList(otherLimits));
 
 		this.dirty = true;
 		this.pluginInstance.getLogger().info("Culling " + type.toString() + " using " + limit.getCulling().toString() + "; limit=" + limit.getLimit() + " range=" + limit.getRange());
@@ -322,6 +734,25 @@ public class Configuration {
 	public List<ConfigurationLimit> getLimits(EntityType type) {
 		return mobLimits.get(type);
 	}
+	
+	/**
+	 * Returns the ConfigurationLimit for the specified mob type and culling.
+	 * @param type The type of entity to get a ConfigurationLimit for.
+	 * @param culling The method of culling to get a ConfigurationLimit for.
+	 * @return The limit for the entity type and culling, or null.
+	 */
+	public ConfigurationLimit getLimit(EntityType type, CullType culling) {
+		return this.limitTable.get(type, culling);
+	}
+	
+	/**
+	 * Returns the largest range of the SPAWN and SPAWNER limits for a mob type.
+	 * @param type The type of entity to get a range for.
+	 * @return The largest range, or 0 if neither limit is defined.
+	 */
+	public int getSpawnRange(EntityType type) {
+		return this.limitTable.getSpawnRange(type);
+	}
 
 
 
@@ -391,7 +822,51 @@ public class Configuration {
 		this.damageCalls = damageCalls;
 		this.dirty = true;
 	}
+	
+	/**
+	 * Returns the most crowded entities to roll damage for each round.
+	 * @return Most crowded entities to roll damage for each round.
+	 */
+	public int getDamageMaxPerRound() {
+		return damageMaxPerRound;
+	}
+	
+	/**
+	 * Sets the most crowded entities to roll damage for each round.
+	 * @param damageMaxPerRound Most crowded entities to roll damage for each round.
+	 */
+	public void setDamageMaxPerRound(int damageMaxPerRound) {
+		if (damageMaxPerRound < 1) {
+			this.pluginInstance.getLogger().warning("damage_max_per_round is < 1, ignoring this and setting to 1.");
+			damageMaxPerRound = 1;
+		}
+		
+		this.damageMaxPerRound = damageMaxPerRound;
+		this.dirty = true;
+	}
+
 
+	/**
+	 * Returns the number of nanoseconds the damage laborer may spend each tick.
+	 * @return Number of nanoseconds the damage laborer may spend each tick.
+	 */
+	public long getDamageTickBudget() {
+		return damageTickBudget;
+	}
+	
+	/**
+	 * Sets the number of microseconds the damage laborer may spend each tick.
+	 * @param micros Number of microseconds the damage laborer may spend each tick.
+	 */
+	public void setDamageTickBudgetMicros(long micros) {
+		if (micros <= 0) {
+			this.pluginInstance.getLogger().info("Warning: damage_tick_budget_micros is <= 0, setting to 1000.");
+			micros = 1000;
+		}
+		
+		this.damageTickBudget = micros * 1000L;
+		this.dirty = true;
+	}
 
 	/**
 	 * Returns the percent chance that a mob will be damaged when crowded.
@@ -511,6 +986,55 @@ public class Configuration {
 		this.dirty = true;
 	}
 
+	/**
+	 * Returns the percent of the hard mob limit the hard cap culls down to once over it.
+	 * @return The percent of the hard mob limit to cull down to.
+	 */
+	public int getHardCapCullToPercent() {
+		return this.hardCapCullToPercent;
+	}
+	
+	/**
+	 * Sets the percent of the hard mob limit the hard cap culls down to once over it.
+	 * @param percent The percent of the hard mob limit to cull down to.
+	 */
+	public void setHardCapCullToPercent(int percent) {
+		if (percent < 0 || percent > 100) {
+			this.pluginInstance.getLogger().warning("hard_cap_cull_to_percent is not between 0 and 100, ignoring this and setting to 100.");
+			percent = 100;
+		}
+		
+		this.hardCapCullToPercent = percent;
+		this.dirty = true;
+	}
+	
+	/**
+	 * Returns the percent of the hard mob limit the mob count must fall to before spawns resume once stopped.
+	 * @return The percent of the hard mob limit to resume spawns at.
+	 */
+	public int getHardCapResumeSpawnPercent() {
+		return this.hardCapResumeSpawnPercent;
+	}
+	
+	/**
+	 * Sets the percent of the hard mob limit the mob count must fall to before spawns resume once stopped.
+	 * @param percent The percent of the hard mob limit to resume spawns at.
+	 */
+	public void setHardCapResumeSpawnPercent(int percent) {
+		if (percent < 0 || percent > 100) {
+			this.pluginInstance.getLogger().warning("hard_cap_resume_spawn_percent is not between 0 and 100, ignoring this and setting to 100.");
+			percent = 100;
+		}
+		
+		if (percent > this.hardCapCullToPercent) {
+			this.pluginInstance.getLogger().warning("hard_cap_resume_spawn_percent is above hard_cap_cull_to_percent, setting it to " + this.hardCapCullToPercent + ".");
+			percent = this.hardCapCullToPercent;
+		}
+		
+		this.hardCapResumeSpawnPercent = percent;
+		this.dirty = true;
+	}
+
     /**
      * Returns number of ticks between calls to the hard cap laborer.
      * @return number of ticks between calls to the hard cap laborer.
@@ -521,21 +1045,47 @@ public class Configuration {
     
     /**
      * Sets the culling strategy.
-     * @param cullingStrategy is either RANDOM or PRIORITY to determine if we should randomize culling or cull items based on what is least likely to be missed vs most likely.
+     * @param cullingStrategy is RANDOM, PRIORITY or DENSITY to determine if we should randomize culling, cull items based on what is least likely to be missed vs most likely, or thin the most crowded areas.
      */
     public void setHardCapCullingStrategy(String cullingStrategy) {
+    	setHardCapCullingStrategy(cullingStrategy, null);
+    }
+    
+    /**
+     * Sets the culling strategy for one world, or for worlds without their own.
+     * @param cullingStrategy is RANDOM, PRIORITY or DENSITY, or DEFAULT to have a world use the strategy for all worlds.
+     * @param world The name of the world, or null for worlds without their own.
+     */
+    public void setHardCapCullingStrategy(String cullingStrategy, String world) {
+    	
+    	if (cullingStrategy == null) {
+    		return;
+    	}
     	
     	cullingStrategy = cullingStrategy.toUpperCase();
     	
-    	if (!cullingStrategy.equals("RANDOM") && !cullingStrategy.equals("PRIORITY"))
+    	if (world != null && cullingStrategy.equals("DEFAULT"))
     	{
-            pluginInstance.getLogger().warning("hard_cap_culling_strategy not an allowed value (needs RANDOM or PRIORITY - has " + cullingStrategy + ".");
+    		this.worldHardCapCullingStrategies.remove(world);
+    		pluginInstance.getLogger().info("MusterCull hard cap culling strategy for " + world + " = " + this.hardCapCullingStrategy + ".");
+    		dirty = true;
+    		return;
+    	}
+    	
+    	if (GlobalCullCullingStrategyType.fromName(cullingStrategy) == null)
+    	{
+            pluginInstance.getLogger().warning("hard_cap_culling_strategy not an allowed value (needs RANDOM, PRIORITY or DENSITY - has " + cullingStrategy + ".");
             return;
     	}
         
-    	this.hardCapCullingStrategy = cullingStrategy;
-    	
-		pluginInstance.getLogger().info("MusterCull hard cap culling strategy = " + this.hardCapCullingStrategy + ".");
+    	if (world == null) {
+    		this.hardCapCullingStrategy = cullingStrategy;
+    		pluginInstance.getLogger().info("MusterCull hard cap culling strategy = " + this.hardCapCullingStrategy + ".");
+    	}
+    	else {
+    		this.worldHardCapCullingStrategies.put(world, cullingStrategy);
+    		pluginInstance.getLogger().info("MusterCull hard cap culling strategy for " + world + " = " + cullingStrategy + ".");
+    	}
 		
 		dirty = true;
     }
@@ -543,6 +1093,93 @@ public class Configuration {
     public GlobalCullCullingStrategyType getHardCapCullingStrategy() {
     	return GlobalCullCullingStrategyType.fromName(hardCapCullingStrategy);
     }
+    
+    /**
+     * Returns how hard-cap culling gets rid of the mobs a strategy chooses.
+     * @param strategy The strategy.
+     * @return How to cull the mobs the strategy chooses.
+     */
+    public CullAction getHardCapCullAction(GlobalCullCullingStrategyType strategy) {
+    	CullAction action = this.hardCapCullActions.get(strategy);
+    	return action == null ? CullAction.DAMAGE : action;
+    }
+    
+    /**
+     * Sets how hard-cap culling gets rid of the mobs a strategy chooses.
+     * @param strategy The strategy.
+     * @param action DAMAGE, KILL_NO_DROPS or REMOVE.
+     */
+    public void setHardCapCullAction(GlobalCullCullingStrategyType strategy, String action) {
+    	
+    	CullAction cullAction = CullAction.fromName(action);
+    	
+    	if (cullAction == null) {
+    		pluginInstance.getLogger().warning("hard_cap_cull_actions for " + strategy + " not an allowed value (needs DAMAGE, KILL_NO_DROPS or REMOVE - has " + action + ".");
+    		return;
+    	}
+    	
+    	this.hardCapCullActions.put(strategy, cullAction);
+    	dirty = true;
+    }
+    
+    /**
+     * Returns how hard-cap culling gets rid of mobs of a cull priority whatever the strategy.
+     * @param priority The cull priority.
+     * @return How to cull mobs of the priority, or null to leave it to the strategy.
+     */
+    public CullAction getPriorityCullAction(int priority) {
+    	return priority >= 0 && priority < this.priorityCullActions.length ? this.priorityCullActions[priority] : null;
+    }
+    
+    /**
+     * Sets how hard-cap culling gets rid of mobs of a cull priority whatever the strategy.
+     * @param priority The cull priority.
+     * @param action DAMAGE, KILL_NO_DROPS or REMOVE, or null to leave it to the strategy.
+     */
+    public void setPriorityCullAction(int priority, String action) {
+    	
+    	if (priority < 1 || priority >= this.priorityCullActions.length) {
+    		pluginInstance.getLogger().warning("hard_cap_priority_cull_actions priority must be between 1 and " + CullPriorityTable.TRANSIENT + " - has " + priority + ".");
+    		return;
+    	}
+    	
+    	CullAction cullAction = CullAction.fromName(action);
+    	
+    	if (action != null && cullAction == null) {
+    		pluginInstance.getLogger().warning("hard_cap_priority_cull_actions for " + priority + " not an allowed value (needs DAMAGE, KILL_NO_DROPS or REMOVE - has " + action + ".");
+    		return;
+    	}
+    	
+    	this.priorityCullActions[priority] = cullAction;
+    	dirty = true;
+    }
+    
+    /**
+     * Returns the culling strategy for a world.
+     * @param world The name of the world.
+     * @return The world's own strategy, or the strategy for all worlds if it has none.
+     */
+    public GlobalCullCullingStrategyType getHardCapCullingStrategy(String world) {
+    	String strategy = this.worldHardCapCullingStrategies.get(world);
+    	return GlobalCullCullingStrategyType.fromName(strategy == null ? hardCapCullingStrategy : strategy);
+    }
+
+	/**
+	 * Gets whether RANDOM hard-cap culling favours mobs in crowded chunks.
+	 */
+	public boolean getHardCapRandomDensityWeighting() {
+		return this.hardCapRandomDensityWeighting;
+	}
+	
+	/**
+	 * Sets whether RANDOM hard-cap culling favours mobs in crowded chunks.
+	 * @param densityWeighting Whether to weight each mob by the number of mobs in its chunk.
+	 */
+	public void setHardCapRandomDensityWeighting(boolean densityWeighting) {
+		
+		this.hardCapRandomDensityWeighting = densityWeighting;
+		this.dirty = true;
+	}
 
     /**
      * Sets the number of ticks between calls to the hard cap laborer.
@@ -552,15 +1189,389 @@ public class Configuration {
 
         pluginInstance.getLogger().info("MusterCull will kill something every " + ticksBetween + " ticks.");
 
-        if (ticksBetween < 200) {
-            pluginInstance.getLogger().warning("ticks_between_hard_cap is < 200, ignoring this and setting to 200.");
-            ticksBetween = 200;
+        if (ticksBetween < 20) {
+            pluginInstance.getLogger().warning("ticks_between_hard_cap is < 20, ignoring this and setting to 20.");
+            ticksBetween = 20;
         }
 
         ticksBetweenHardCap = ticksBetween;
         dirty = true;
     }
 
+    /**
+     * Returns the number of ticks a culled mob stops counting towards the caps while its death is awaited.
+     * @return number of ticks a culled mob stays pending.
+     */
+    public long getHardCapPendingDeathTicks() {
+        return hardCapPendingDeathTicks;
+    }
+
+    /**
+     * Sets the number of ticks a culled mob stops counting towards the caps while its death is awaited.
+     * @param ticks Number of ticks a culled mob stays pending.
+     */
+    public void setHardCapPendingDeathTicks(long ticks) {
+
+        if (ticks < 1) {
+            pluginInstance.getLogger().warning("hard_cap_pending_death_ticks is < 1, ignoring this and setting to 1.");
+            ticks = 1;
+        }
+
+        hardCapPendingDeathTicks = ticks;
+        dirty = true;
+    }
+
+    /**
+     * Returns the maximum number of mobs the hard cap kills in a tick.
+     * @return maximum number of mobs the hard cap kills in a tick.
+     */
+    public int getHardCapKillsPerTick() {
+        return hardCapKillsPerTick;
+    }
+
+    /**
+     * Sets the maximum number of mobs the hard cap kills in a tick.
+     * @param kills Maximum number of mobs the hard cap kills in a tick.
+     */
+    public void setHardCapKillsPerTick(int kills) {
+
+        if (kills < 1) {
+            pluginInstance.getLogger().warning("hard_cap_kills_per_tick is < 1, ignoring this and setting to 1.");
+            kills = 1;
+        }
+
+        hardCapKillsPerTick = kills;
+        dirty = true;
+    }
+
+    /**
+     * Returns the maximum number of worlds over their own cap the hard cap culls in a pass.
+     * @return maximum number of worlds culled for their own cap in a pass.
+     */
+    public int getHardCapWorldsPerPass() {
+        return hardCapWorldsPerPass;
+    }
+
+    /**
+     * Sets the maximum number of worlds over their own cap the hard cap culls in a pass.
+     * @param worlds Maximum number of worlds culled for their own cap in a pass.
+     */
+    public void setHardCapWorldsPerPass(int worlds) {
+
+        if (worlds < 1) {
+            pluginInstance.getLogger().warning("hard_cap_worlds_per_pass is < 1, ignoring this and setting to 1.");
+            worlds = 1;
+        }
+
+        hardCapWorldsPerPass = worlds;
+        dirty = true;
+    }
+
+    /**
+     * Returns the hard mob cap for a world.
+     * @param world The name of the world.
+     * @return The world's own cap, or null if only the global cap applies there.
+     */
+    public WorldMobCap getWorldMobCap(String world) {
+        return worldMobCaps.get(world);
+    }
+
+    /**
+     * Sets the hard mob cap for a world.
+     * @param world The name of the world.
+     * @param cap The world's own cap, or null to apply only the global cap there.
+     */
+    public void setWorldMobCap(String world, WorldMobCap cap) {
+
+        if (cap == null) {
+            worldMobCaps.remove(world);
+        }
+        else {
+            if (cap.getMaxMob() < 0 || cap.getPlayerMultiplier() < 0) {
+                pluginInstance.getLogger().warning("world_mob_limits for " + world + " is < 0 when 0 is the limit, ignoring it.");
+                return;
+            }
+
+            worldMobCaps.put(world, cap);
+        }
+
+        dirty = true;
+    }
+
+    /**
+     * Returns the number of nanoseconds the hard cap may spend killing mobs each tick.
+     * @return number of nanoseconds the hard cap may spend killing mobs each tick.
+     */
+    public long getHardCapTickBudget() {
+        return hardCapTickBudget;
+    }
+
+    /**
+     * Sets the number of microseconds the hard cap may spend killing mobs each tick.
+     * @param micros Number of microseconds the hard cap may spend killing mobs each tick.
+     */
+    public void setHardCapTickBudgetMicros(long micros) {
+
+        if (micros < 1) {
+            pluginInstance.getLogger().warning("hard_cap_tick_budget_micros is < 1, ignoring this and setting to 1000.");
+            micros = 1000;
+        }
+
+        hardCapTickBudget = micros * 1000L;
+        dirty = true;
+    }
+
+    /**
+     * Returns number of ticks between corrections of the live mob counts.
+     * @return number of ticks between corrections of the live mob counts.
+     */
+    public long getTicksBetweenMobCount() {
+        return ticksBetweenMobCount;
+    }
+
+    /**
+     * Sets the number of ticks between corrections of the live mob counts.
+     * @param ticksBetween Number of ticks between corrections of the live mob counts.
+     */
+    public void setTicksBetweenMobCount(long ticksBetween) {
+
+        if (ticksBetween < 20) {
+            pluginInstance.getLogger().warning("ticks_between_mob_count is < 20, ignoring this and setting to 20.");
+            ticksBetween = 20;
+        }
+
+        ticksBetweenMobCount = ticksBetween;
+        dirty = true;
+    }
+
+    /**
+     * Returns number of ticks between reconcile passes over the spatial entity index.
+     * @return number of ticks between reconcile passes over the spatial entity index.
+     */
+    public long getTicksBetweenIndexRebuild() {
+        return ticksBetweenIndexRebuild;
+    }
+
+    /**
+     * Sets the number of ticks between reconcile passes over the spatial entity index.
+     * @param ticksBetween Number of ticks between reconcile passes over the spatial entity index.
+     */
+    public void setTicksBetweenIndexRebuild(long ticksBetween) {
+
+        if (ticksBetween < 1) {
+            pluginInstance.getLogger().warning("ticks_between_index_rebuild is < 1, ignoring this and setting to 1.");
+            ticksBetween = 1;
+        }
+
+        ticksBetweenIndexRebuild = ticksBetween;
+        dirty = true;
+    }
+
+    /**
+     * Returns number of ticks a SPAWN or SPAWNER rejection is remembered for a chunk.
+     * @return number of ticks a rejection is remembered, or 0 if never.
+     */
+    public long getSpawnVerdictTicks() {
+        return spawnVerdictTicks;
+    }
+
+    /**
+     * Sets the number of ticks a SPAWN or SPAWNER rejection is remembered for a chunk.
+     * @param ticks Number of ticks a rejection is remembered, or 0 to never remember.
+     */
+    public void setSpawnVerdictTicks(long ticks) {
+
+        if (ticks < 0) {
+            pluginInstance.getLogger().warning("spawn_verdict_ticks is < 0, ignoring this and setting to 0.");
+            ticks = 0;
+        }
+
+        spawnVerdictTicks = ticks;
+        dirty = true;
+    }
+
+    /**
+     * Returns the percent of a hard cap the projected mob count must reach before spawns are admitted at random.
+     * @return percent of a hard cap to start admitting spawns at random, or 100 if spawns are never admitted at random.
+     */
+    public int getSpawnAdmissionStartPercent() {
+        return spawnAdmissionStartPercent;
+    }
+
+    /**
+     * Sets the percent of a hard cap the projected mob count must reach before spawns are admitted at random.
+     * @param percent Percent of a hard cap to start admitting spawns at random, or 100 to never admit spawns at random.
+     */
+    public void setSpawnAdmissionStartPercent(int percent) {
+
+        if (percent < 0) {
+            pluginInstance.getLogger().warning("spawn_admission_start_percent is < 0, ignoring this and setting to 0.");
+            percent = 0;
+        }
+        else if (percent > 100) {
+            pluginInstance.getLogger().warning("spawn_admission_start_percent is > 100, ignoring this and setting to 100.");
+            percent = 100;
+        }
+
+        spawnAdmissionStartPercent = percent;
+        dirty = true;
+    }
+
+    /**
+     * Returns the number of ticks ahead the mob count is projected when admitting spawns.
+     * @return number of ticks ahead to project the mob count.
+     */
+    public long getSpawnAdmissionHorizonTicks() {
+        return spawnAdmissionHorizonTicks;
+    }
+
+    /**
+     * Sets the number of ticks ahead the mob count is projected when admitting spawns.
+     * @param ticks Number of ticks ahead to project the mob count, or 0 to use the current count.
+     */
+    public void setSpawnAdmissionHorizonTicks(long ticks) {
+
+        if (ticks < 0) {
+            pluginInstance.getLogger().warning("spawn_admission_horizon_ticks is < 0, ignoring this and setting to 0.");
+            ticks = 0;
+        }
+
+        spawnAdmissionHorizonTicks = ticks;
+        dirty = true;
+    }
+
+    /**
+     * Returns the number of ticks after which a spawn or death counts half as much in the average rates.
+     * @return half life of the spawn and death rates in ticks.
+     */
+    public long getSpawnRateHalfLifeTicks() {
+        return spawnRateHalfLifeTicks;
+    }
+
+    /**
+     * Sets the number of ticks after which a spawn or death counts half as much in the average rates.
+     * @param ticks Half life of the spawn and death rates in ticks.
+     */
+    public void setSpawnRateHalfLifeTicks(long ticks) {
+
+        if (ticks < SpawnRateTracker.WINDOW_TICKS) {
+            pluginInstance.getLogger().warning("spawn_rate_half_life_ticks is < " + SpawnRateTracker.WINDOW_TICKS + ", ignoring this and setting to " + SpawnRateTracker.WINDOW_TICKS + ".");
+            ticks = SpawnRateTracker.WINDOW_TICKS;
+        }
+
+        spawnRateHalfLifeTicks = ticks;
+        dirty = true;
+    }
+
+    /**
+     * Returns number of ticks between summaries of cancelled spawns.
+     * @return number of ticks between summaries of cancelled spawns.
+     */
+    public long getTicksBetweenSpawnCancelSummary() {
+        return ticksBetweenSpawnCancelSummary;
+    }
+
+    /**
+     * Sets the number of ticks between summaries of cancelled spawns.
+     * @param ticksBetween Number of ticks between summaries of cancelled spawns.
+     */
+    public void setTicksBetweenSpawnCancelSummary(long ticksBetween) {
+
+        if (ticksBetween < 20) {
+            pluginInstance.getLogger().warning("ticks_between_spawn_cancel_summary is < 20, ignoring this and setting to 20.");
+            ticksBetween = 20;
+        }
+
+        ticksBetweenSpawnCancelSummary = ticksBetween;
+        dirty = true;
+    }
+
+    /**
+     * Returns the number of busiest chunks to list in each summary of cancelled spawns.
+     * @return the number of chunks to list, or 0 if chunks are not tracked.
+     */
+    public int getSpawnCancelSummaryChunks() {
+        return spawnCancelSummaryChunks;
+    }
+
+    /**
+     * Sets the number of busiest chunks to list in each summary of cancelled spawns.
+     * @param chunks The number of chunks to list, or 0 to not track chunks.
+     */
+    public void setSpawnCancelSummaryChunks(int chunks) {
+
+        if (chunks < 0) {
+            pluginInstance.getLogger().warning("spawn_cancel_summary_chunks is < 0, ignoring this and setting to 0.");
+            chunks = 0;
+        }
+
+        spawnCancelSummaryChunks = chunks;
+        dirty = true;
+    }
+
+	/**
+	 * Gets whether to log every cancelled spawn rather than only summaries.
+	 */
+	public boolean getSpawnCancelDebug() {
+		return this.spawnCancelDebug;
+	}
+	
+	/**
+	 * Sets whether to log every cancelled spawn rather than only summaries.
+	 * @param spawnCancelDebug Whether to log every cancelled spawn.
+	 */
+	public void setSpawnCancelDebug(boolean spawnCancelDebug) {
+		
+		this.spawnCancelDebug = spawnCancelDebug;
+		this.dirty = true;
+	}
+
+    /**
+     * Returns the number of ticks for a spawner to earn back one mob.
+     * @return the number of ticks per spawn, or 0 if spawners are not rate limited.
+     */
+    public long getSpawnerTicksPerSpawn() {
+        return spawnerTicksPerSpawn;
+    }
+
+    /**
+     * Sets the number of ticks for a spawner to earn back one mob.
+     * @param ticks The number of ticks per spawn, or 0 to not rate limit spawners.
+     */
+    public void setSpawnerTicksPerSpawn(long ticks) {
+
+        if (ticks < 0) {
+            pluginInstance.getLogger().warning("spawner_ticks_per_spawn is < 0, ignoring this and setting to 0.");
+            ticks = 0;
+        }
+
+        spawnerTicksPerSpawn = ticks;
+        dirty = true;
+    }
+
+    /**
+     * Returns the number of ticks over which a spawner's recent output count halves.
+     * @return the number of ticks over which recent output halves.
+     */
+    public long getSpawnerOutputWindow() {
+        return spawnerOutputWindow;
+    }
+
+    /**
+     * Sets the number of ticks over which a spawner's recent output count halves.
+     * @param ticks The number of ticks over which recent output halves.
+     */
+    public void setSpawnerOutputWindow(long ticks) {
+
+        if (ticks < 20) {
+            pluginInstance.getLogger().warning("spawner_output_window is < 20, ignoring this and setting to 20.");
+            ticks = 20;
+        }
+
+        spawnerOutputWindow = ticks;
+        dirty = true;
+    }
+
 	/**
 	 * Gets whether to notify when an entity is damaged by this plugin.
 	 */
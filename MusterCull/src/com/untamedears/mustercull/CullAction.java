@@ -0,0 +1,45 @@
+package com.untamedears.mustercull;
+
+/**
+ * How the hard cap gets rid of a mob it has chosen to cull.
+ */
+enum CullAction {
+
+	/**
+	 * Damages the mob to death, as though it had been hurt.
+	 */
+	DAMAGE,
+	
+	/**
+	 * Kills the mob outright without dropping items or experience. The mob
+	 * is marked by entity id so its drops are cleared whenever its death
+	 * event arrives; relies on damage() firing EntityDeathEvent, as on
+	 * 1.7.x CraftBukkit.
+	 */
+	KILL_NO_DROPS,
+	
+	/**
+	 * Removes the mob from the world without it dying.
+	 */
+	REMOVE;
+	
+	/**
+	 * Returns a CullAction representing the name provided.
+	 * @param name A case-insensitive name to compare to.
+	 * @return The CullAction representing the name provided, or null.
+	 */
+	public static CullAction fromName(String name) {
+		
+		if (name == null) {
+			return null;
+		}
+		
+		for (CullAction action : values()) {
+			if (0 == name.compareToIgnoreCase(action.name())) {
+				return action;
+			}
+		}
+		
+		return null;
+	}
+}
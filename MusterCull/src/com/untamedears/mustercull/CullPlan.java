@@ -0,0 +1,151 @@
+package com.untamedears.mustercull;
+
+import java.util.Arrays;
+
+/**
+ * The mobs a hard cap pass has decided to cull, by number in a MobSnapshot.
+ */
+public class CullPlan {
+
+	/**
+	 * The mobs to cull, in the order they were chosen.
+	 */
+	private int[] mobs = new int[16];
+
+	/**
+	 * How to cull each mob, in the same order as mobs.
+	 */
+	private CullAction[] actions = new CullAction[16];
+
+	/**
+	 * Number of mobs to cull.
+	 */
+	private int size = 0;
+
+	/**
+	 * Whether each mob in the snapshot has been chosen.
+	 */
+	private boolean[] chosen;
+
+	/**
+	 * Whether the pass was over the hard mob limit.
+	 */
+	private boolean hardCap = false;
+
+	/**
+	 * Number of crowded groups of chunks the pass purged.
+	 */
+	private int penaltySuperChunks = 0;
+
+	/**
+	 * Constructor which sizes the plan for a snapshot.
+	 * @param snapshotSize The number of mobs in the snapshot.
+	 */
+	public CullPlan(int snapshotSize) {
+		this.chosen = new boolean[snapshotSize];
+	}
+
+	/**
+	 * Chooses a mob to cull.
+	 * @param mob The mob number in the snapshot.
+	 */
+	public void add(int mob) {
+
+		if (this.chosen[mob]) {
+			return;
+		}
+
+		if (this.size == this.mobs.length) {
+			this.mobs = Arrays.copyOf(this.mobs, this.size * 2);
+			this.actions = Arrays.copyOf(this.actions, this.size * 2);
+		}
+
+		this.actions[this.size] = CullAction.DAMAGE;
+		this.mobs[this.size++] = mob;
+		this.chosen[mob] = true;
+	}
+
+	/**
+	 * Returns whether a mob has been chosen to cull.
+	 * @param mob The mob number in the snapshot.
+	 * @return Whether the mob has been chosen.
+	 */
+	public boolean contains(int mob) {
+		return this.chosen[mob];
+	}
+
+	/**
+	 * Returns the number of mobs to cull.
+	 * @return The number of mobs to cull.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns a mob to cull.
+	 * @param i The position in the plan.
+	 * @return The mob number in the snapshot.
+	 */
+	public int get(int i) {
+		return this.mobs[i];
+	}
+
+	/**
+	 * Returns how to cull a mob.
+	 * @param i The position in the plan.
+	 * @return How to cull the mob.
+	 */
+	public CullAction getAction(int i) {
+		return this.actions[i];
+	}
+
+	/**
+	 * Sets how to cull a mob.
+	 * @param i The position in the plan.
+	 * @param action How to cull the mob.
+	 */
+	public void setAction(int i, CullAction action) {
+		this.actions[i] = action;
+	}
+
+	/**
+	 * Returns whether the pass was over the hard mob limit.
+	 * @return Whether the pass was over the hard mob limit.
+	 */
+	public boolean isHardCap() {
+		return this.hardCap;
+	}
+
+	/**
+	 * Sets whether the pass was over the hard mob limit.
+	 * @param hardCap Whether the pass was over the hard mob limit.
+	 */
+	public void setHardCap(boolean hardCap) {
+		this.hardCap = hardCap;
+	}
+
+	/**
+	 * Returns whether the pass purged a crowded group of chunks.
+	 * @return Whether the pass purged a crowded group of chunks.
+	 */
+	public boolean isPenaltyPurge() {
+		return this.penaltySuperChunks > 0;
+	}
+
+	/**
+	 * Returns the number of crowded groups of chunks the pass purged.
+	 * @return The number of crowded groups of chunks purged.
+	 */
+	public int getPenaltySuperChunks() {
+		return this.penaltySuperChunks;
+	}
+
+	/**
+	 * Counts crowded groups of chunks the pass purged.
+	 * @param count The number of crowded groups of chunks purged.
+	 */
+	public void addPenaltySuperChunks(int count) {
+		this.penaltySuperChunks += count;
+	}
+}
@@ -0,0 +1,72 @@
+package com.untamedears.mustercull;
+
+import org.bukkit.DyeColor;
+import org.bukkit.entity.IronGolem;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Tameable;
+import org.bukkit.material.Colorable;
+
+/**
+ * A test a persistent mob must pass for a cull priority rule to apply.
+ */
+enum CullPriorityCondition {
+
+	/**
+	 * Applies to every persistent mob of the type.
+	 */
+	ALWAYS,
+
+	/**
+	 * Applies to iron golems built by players.
+	 */
+	PLAYER_CREATED,
+
+	/**
+	 * Applies to tamed mobs.
+	 */
+	TAMED,
+
+	/**
+	 * Applies to mobs which have been dyed away from white.
+	 */
+	DYED;
+
+	/**
+	 * Returns whether a mob passes this test.
+	 * @param mob The mob to test.
+	 * @return Whether the mob passes this test.
+	 */
+	public boolean matches(LivingEntity mob) {
+
+		switch (this) {
+		case PLAYER_CREATED:
+			return mob instanceof IronGolem && ((IronGolem) mob).isPlayerCreated();
+		case TAMED:
+			return mob instanceof Tameable && ((Tameable) mob).isTamed();
+		case DYED:
+			return mob instanceof Colorable && ((Colorable) mob).getColor() != DyeColor.WHITE;
+		default:
+			return true;
+		}
+	}
+
+	/**
+	 * Returns a CullPriorityCondition representing the name provided.
+	 * @param name A case-insensitive name to compare to.
+	 * @return The CullPriorityCondition representing the name provided, or null.
+	 */
+	public static CullPriorityCondition fromName(String name) {
+
+		if (name == null) {
+			return null;
+		}
+
+		for (CullPriorityCondition condition : values()) {
+			if (0 == name.compareToIgnoreCase(condition.name())) {
+				return condition;
+			}
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,150 @@
+package com.untamedears.mustercull;
+
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.LivingEntity;
+
+import java.util.EnumSet;
+
+/**
+ * An immutable table of the priorities the hard cap culls mobs in.
+ *
+ * Higher priorities are culled first. Named mobs come lowest, then
+ * persistent mobs matching a rule, then other persistent mobs, then mobs
+ * which would despawn anyway. Rules are looked up by EntityType, so a mob
+ * of a type without rules is classified without any casts.
+ */
+public final class CullPriorityTable {
+
+	/**
+	 * Priority of mobs with a custom name.
+	 */
+	public static final int NAMED = 5;
+
+	/**
+	 * Priority of persistent mobs which match no rule.
+	 */
+	public static final int PERSISTENT = 8;
+
+	/**
+	 * Priority of mobs which would despawn when players are far away.
+	 */
+	public static final int TRANSIENT = 9;
+
+	/**
+	 * Every CullPriorityCondition, in order.
+	 */
+	private static final CullPriorityCondition[] CONDITIONS = CullPriorityCondition.values();
+
+	/**
+	 * The built-in table, used when the configuration has no rules.
+	 */
+	public static final CullPriorityTable DEFAULT = new Builder()
+		// High value persistent mobs (horses, villagers, player created iron golems).
+		.add(EntityType.HORSE, CullPriorityCondition.ALWAYS, 6)
+		.add(EntityType.VILLAGER, CullPriorityCondition.ALWAYS, 6)
+		.add(EntityType.IRON_GOLEM, CullPriorityCondition.PLAYER_CREATED, 6)
+		// Tame wolves, colored sheep, tame cats.
+		.add(EntityType.WOLF, CullPriorityCondition.TAMED, 7)
+		.add(EntityType.OCELOT, CullPriorityCondition.TAMED, 7)
+		.add(EntityType.SHEEP, CullPriorityCondition.DYED, 7)
+		.build();
+
+	/**
+	 * Collects rules for a new table.
+	 */
+	public static class Builder {
+
+		/**
+		 * Rule priorities indexed by EntityType ordinal, then by condition ordinal; 0 for none.
+		 */
+		private byte[][] rules = new byte[EntityType.values().length][CONDITIONS.length];
+
+		/**
+		 * Types with at least one rule.
+		 */
+		private EnumSet<EntityType> ruledTypes = EnumSet.noneOf(EntityType.class);
+
+		/**
+		 * Adds a rule, replacing any with the same type and condition.
+		 * @param type The type of mob the rule applies to.
+		 * @param condition The test the mob must pass.
+		 * @param priority The priority of mobs matching the rule.
+		 * @return This builder.
+		 */
+		public Builder add(EntityType type, CullPriorityCondition condition, int priority) {
+			this.rules[type.ordinal()][condition.ordinal()] = (byte) priority;
+			this.ruledTypes.add(type);
+			return this;
+		}
+
+		/**
+		 * Returns a table holding the rules added so far.
+		 * @return A new table.
+		 */
+		public CullPriorityTable build() {
+			byte[][] copy = new byte[this.rules.length][];
+
+			for (int i = 0; i < this.rules.length; i++) {
+				copy[i] = this.rules[i].clone();
+			}
+
+			return new CullPriorityTable(copy, EnumSet.copyOf(this.ruledTypes));
+		}
+	}
+
+	/**
+	 * Rule priorities indexed by EntityType ordinal, then by condition ordinal; 0 for none.
+	 */
+	private final byte[][] rules;
+
+	/**
+	 * Types with at least one rule.
+	 */
+	private final EnumSet<EntityType> ruledTypes;
+
+	/**
+	 * Constructor which takes ownership of compiled rules.
+	 * @param rules Rule priorities by type and condition.
+	 * @param ruledTypes Types with at least one rule.
+	 */
+	private CullPriorityTable(byte[][] rules, EnumSet<EntityType> ruledTypes) {
+		this.rules = rules;
+		this.ruledTypes = ruledTypes;
+	}
+
+	/**
+	 * Returns the cull priority of a mob. Must be called on the main thread.
+	 * @param mob The mob to classify.
+	 * @return The priority of the mob; higher is culled first.
+	 */
+	public int priorityOf(LivingEntity mob) {
+
+		if (null != mob.getCustomName() || mob.isCustomNameVisible()) {
+			return NAMED;
+		}
+
+		if (mob.getRemoveWhenFarAway()) {
+			return TRANSIENT;
+		}
+
+		EntityType type = mob.getType();
+
+		if (!this.ruledTypes.contains(type)) {
+			return PERSISTENT;
+		}
+
+		byte[] byCondition = this.rules[type.ordinal()];
+		int priority = 0;
+
+		// The most protective matching rule wins.
+		for (CullPriorityCondition condition : CONDITIONS) {
+			int rulePriority = byCondition[condition.ordinal()];
+
+			if (rulePriority != 0 && (priority == 0 || rulePriority < priority) && condition.matches(mob)) {
+				priority = rulePriority;
+			}
+		}
+
+		return priority == 0 ? PERSISTENT : priority;
+	}
+}
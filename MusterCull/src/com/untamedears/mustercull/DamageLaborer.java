@@ -20,7 +20,34 @@ public class DamageLaborer extends Laborer {
 	
 	
 	/**
-	 * Repeating damage method for the class.
+	 * Number of ticks until the next round of damage checks starts.
+	 */
+	private long ticksUntilRound = 0;
+	
+	/**
+	 * Number of entities left to check in the current round.
+	 */
+	private int remainingCalls = 0;
+	
+	/**
+	 * Number of crowded entities left to roll damage for in the current round.
+	 */
+	private int remainingDamage = 0;
+	
+	/**
+	 * Source of randomness for the damage chance.
+	 */
+	private Random random = new Random();
+	
+	
+	/**
+	 * Repeating damage method for the class, called every tick.
+	 * 
+	 * A round of damage_count checks starts every ticks_between_damage ticks
+	 * and is worked through as far as the per-tick time budget allows. The
+	 * round ends once damage_max_per_round crowded entities have been rolled
+	 * for. Each is checked against its limit again just before, since the
+	 * list may have been built several runs ago.
 	 */
 	@Override
 	public void run() {
@@ -28,49 +55,58 @@ public class DamageLaborer extends Laborer {
 		if (this.getPluginInstance().isPaused(CullType.DAMAGE)) {
 			return;
 		}
-
-		int damageCalls = this.getPluginInstance().getDamageCalls();
 		
-		for (int i = 0; i < damageCalls; i++)
+		Configuration config = this.getPluginInstance().getConfiguration();
+		
+		if (--this.ticksUntilRound <= 0) {
+			this.ticksUntilRound = config.getTicksBetweenDamage();
+			this.remainingCalls = config.getDamageCalls();
+			this.remainingDamage = config.getDamageMaxPerRound();
+		}
+		
+		if (this.remainingCalls <= 0 || this.remainingDamage <= 0) {
+			return;
+		}
+		
+		long deadline = System.nanoTime() + config.getDamageTickBudget();
+		
+		while (this.remainingCalls > 0 && this.remainingDamage > 0 && System.nanoTime() < deadline)
 		{
-			EntityLimitPair entityLimitPair = this.getPluginInstance().getNextEntity();
+			EntityLimitPair entityLimitPair = this.getPluginInstance().getNextEntity(deadline);
 			
 			if (entityLimitPair == null) {
+				
+				// Out of entities rather than out of time, so this round is done.
+				if (!this.getPluginInstance().isBuildingDamageEntities()) {
+					this.remainingCalls = 0;
+				}
+				
 				return;
 			}
 			
+			this.remainingCalls--;
+			
 			Entity entity = entityLimitPair.getEntity();
 			
 			if (entity == null || entity.isDead()) {
-				return;
+				continue;
 			}
 			
 			ConfigurationLimit limit = entityLimitPair.getLimit();
 			
 			if (limit.getCulling() != CullType.DAMAGE) {
-				return;
+				continue;
 			}
 			
-			Random random = new Random();
+			// Kills, deaths and wandering since the list was built may have thinned the group.
+			if (this.getPluginInstance().countSimilarNearby(entity, limit.getRange(), limit.getLimit()) < limit.getLimit()) {
+				continue;
+			}
 			
-			// Loop through entities in range and count similar entities.
-			int count = 0;
+			this.remainingDamage--;
 			
-			for (Entity otherEntity : entity.getNearbyEntities(limit.getRange(), limit.getRange(), limit.getRange())) {
-				if (0 == otherEntity.getType().compareTo(entity.getType())) {
-					
-					count += 1;
-					
-					// If we've reached a limit for this entity, go ahead and damage it.
-					if (count >= limit.getLimit()) {
-						
-						if (random.nextInt(100) < this.getPluginInstance().getDamageChance()) {
-							this.getPluginInstance().damageEntity(entity, this.getPluginInstance().getDamage());
-						}
-						
-						return;
-					}
-				}
+			if (this.random.nextInt(100) < config.getDamageChance()) {
+				this.getPluginInstance().damageEntity(entity, config.getDamage());
 			}
 		}
 	}
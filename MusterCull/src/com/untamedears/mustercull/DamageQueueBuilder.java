@@ -0,0 +1,419 @@
+package com.untamedears.mustercull;
+
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+/**
+ * Builds the list of entities for the DAMAGE laborer to damage, a slice at a time.
+ *
+ * Reading every entity of every world in one go is a spike on busy servers,
+ * so the work is done in steps which stop at a deadline and pick up where
+ * they left off on the next call. Worlds are read a loaded chunk at a time,
+ * then each crowded type is filed into its grid and checked a slice of
+ * entities at a time.
+ */
+public class DamageQueueBuilder {
+
+	/**
+	 * Number of entities to handle between checks of the clock.
+	 */
+	private static final int ENTITIES_PER_CLOCK_CHECK = 64;
+
+	/**
+	 * Buffer for a reference to the main plug-in class.
+	 */
+	private MusterCull pluginInstance = null;
+
+	/**
+	 * The worlds to read, captured when the build started.
+	 */
+	private List<World> worlds;
+
+	/**
+	 * Index of the world currently being read.
+	 */
+	private int worldIndex = 0;
+
+	/**
+	 * Loaded chunks of the world currently being read, or null between worlds.
+	 */
+	private Chunk[] chunks = null;
+
+	/**
+	 * Index of the next chunk to read from the current world.
+	 */
+	private int chunkIndex = 0;
+
+	/**
+	 * Entities read so far, grouped by type.
+	 */
+	private Map<EntityType, List<Entity>> sortedEntities = new HashMap<EntityType, List<Entity>>();
+
+	/**
+	 * Number of entities read so far.
+	 */
+	private int totalEntities = 0;
+
+	/**
+	 * The types to check for crowding, or null until every world is read.
+	 */
+	private List<EntityType> crowdedTypes = null;
+
+	/**
+	 * The DAMAGE limit for each type in crowdedTypes.
+	 */
+	private List<ConfigurationLimit> crowdedLimits = null;
+
+	/**
+	 * Index of the type currently being checked.
+	 */
+	private int typeIndex = 0;
+
+	/**
+	 * Entities of the type currently being checked, or null between types.
+	 */
+	private List<Entity> typeEntities = null;
+
+	/**
+	 * The DAMAGE limit for the type currently being checked.
+	 */
+	private ConfigurationLimit typeLimit = null;
+
+	/**
+	 * The width of a grid cell for the type currently being checked.
+	 */
+	private int range;
+
+	/**
+	 * Where each entity of the current type was when filed, by position in typeEntities.
+	 */
+	private World[] mobWorlds;
+
+	/**
+	 * The x coordinate of each entity of the current type when filed.
+	 */
+	private double[] x;
+
+	/**
+	 * The y coordinate of each entity of the current type when filed.
+	 */
+	private double[] y;
+
+	/**
+	 * The z coordinate of each entity of the current type when filed.
+	 */
+	private double[] z;
+
+	/**
+	 * The next entity in the same grid cell, or -1, by position in typeEntities.
+	 */
+	private int[] next;
+
+	/**
+	 * For each world, the first entity in each grid cell, by cell key.
+	 */
+	private Map<World, LongHashMap<int[]>> grids;
+
+	/**
+	 * Number of entities of the current type filed into the grid.
+	 */
+	private int filed;
+
+	/**
+	 * Number of entities of the current type checked for crowding.
+	 */
+	private int checked;
+
+	/**
+	 * Scratch location for reading where entities are.
+	 */
+	private Location location = new Location(null, 0, 0, 0);
+
+	/**
+	 * The entities found to be crowded so far.
+	 */
+	private Stack<EntityLimitPair> crowded = new Stack<EntityLimitPair>();
+
+	/**
+	 * Constructor which takes a reference to the main plug-in class.
+	 * @param pluginInstance A reference to the main plug-in class.
+	 */
+	public DamageQueueBuilder(MusterCull pluginInstance) {
+		this.pluginInstance = pluginInstance;
+		this.worlds = new ArrayList<World>(pluginInstance.getServer().getWorlds());
+	}
+
+	/**
+	 * Reads entities and checks them for crowding until everything is done
+	 * or the deadline passes.
+	 * @param deadline The System.nanoTime() value to stop at.
+	 * @return Whether the list is ready to build.
+	 */
+	public boolean step(long deadline) {
+
+		int work = 0;
+
+		while (this.worldIndex < this.worlds.size()) {
+
+			if (this.chunks == null) {
+				this.chunks = this.worlds.get(this.worldIndex).getLoadedChunks();
+				this.chunkIndex = 0;
+			}
+
+			while (this.chunkIndex < this.chunks.length) {
+				Chunk chunk = this.chunks[this.chunkIndex++];
+
+				// Chunks unloaded since the world was read have taken their entities with them.
+				if (!chunk.isLoaded()) {
+					continue;
+				}
+
+				Entity[] entities = chunk.getEntities();
+
+				for (Entity entity : entities) {
+					List<Entity> knownEntities = this.sortedEntities.get(entity.getType());
+
+					if (knownEntities == null) {
+						knownEntities = new ArrayList<Entity>();
+						this.sortedEntities.put(entity.getType(), knownEntities);
+					}
+
+					knownEntities.add(entity);
+				}
+
+				this.totalEntities += entities.length;
+				work += entities.length + 1;
+
+				if (work >= ENTITIES_PER_CLOCK_CHECK) {
+					work = 0;
+
+					if (System.nanoTime() >= deadline) {
+						return false;
+					}
+				}
+			}
+
+			this.chunks = null;
+			this.worldIndex++;
+		}
+
+		if (this.crowdedTypes == null) {
+			chooseTypes();
+		}
+
+		while (this.typeIndex < this.crowdedTypes.size()) {
+
+			if (this.typeEntities == null && !startType(this.crowdedTypes.get(this.typeIndex), this.crowdedLimits.get(this.typeIndex))) {
+				this.typeIndex++;
+				continue;
+			}
+
+			int size = this.typeEntities.size();
+
+			while (this.filed < size) {
+				file(this.filed++);
+
+				if (++work >= ENTITIES_PER_CLOCK_CHECK) {
+					work = 0;
+
+					if (System.nanoTime() >= deadline) {
+						return false;
+					}
+				}
+			}
+
+			while (this.checked < size) {
+				check(this.checked++);
+
+				if (++work >= ENTITIES_PER_CLOCK_CHECK) {
+					work = 0;
+
+					if (System.nanoTime() >= deadline) {
+						return false;
+					}
+				}
+			}
+
+			finishType();
+			this.typeIndex++;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the entities to damage once step() has finished.
+	 * @return The entities which are over their DAMAGE limit.
+	 */
+	public Stack<EntityLimitPair> build() {
+		return this.crowded;
+	}
+
+	/**
+	 * Picks the types with a DAMAGE limit which make up enough of all the
+	 * entities read to be worth checking.
+	 */
+	private void chooseTypes() {
+
+		this.crowdedTypes = new ArrayList<EntityType>();
+		this.crowdedLimits = new ArrayList<ConfigurationLimit>();
+
+		Configuration config = this.pluginInstance.getConfiguration();
+
+		if (this.totalEntities < config.getMobLimit()) {
+			return;
+		}
+
+		float mobLimitPercent = ((float)config.getMobLimitPercent()) / 100.0f;
+
+		for (Map.Entry<EntityType, List<Entity>> entries : this.sortedEntities.entrySet()) {
+			ConfigurationLimit limit = this.pluginInstance.getLimit(entries.getKey(), CullType.DAMAGE);
+
+			if (limit == null) {
+				continue;
+			}
+
+			if (((float)entries.getValue().size()) / ((float)this.totalEntities) >= mobLimitPercent) {
+				this.crowdedTypes.add(entries.getKey());
+				this.crowdedLimits.add(limit);
+			}
+		}
+	}
+
+	/**
+	 * Gets ready to check the entities of one type for crowding.
+	 *
+	 * The entities are bucketed into a grid of cells as wide as the limit's
+	 * range, so each entity only needs to look at the nine cells around its
+	 * own rather than asking Bukkit for everything nearby.
+	 * @param type The type to check.
+	 * @param limit The DAMAGE limit for the type.
+	 * @return Whether the type has enough entities to need checking.
+	 */
+	private boolean startType(EntityType type, ConfigurationLimit limit) {
+
+		List<Entity> entities = this.sortedEntities.get(type);
+		int size = entities.size();
+
+		if (size <= limit.getLimit()) {
+			return false;
+		}
+
+		this.typeEntities = entities;
+		this.typeLimit = limit;
+		this.range = Math.max(1, limit.getRange());
+		this.mobWorlds = new World[size];
+		this.x = new double[size];
+		this.y = new double[size];
+		this.z = new double[size];
+		this.next = new int[size];
+		this.grids = new HashMap<World, LongHashMap<int[]>>();
+		this.filed = 0;
+		this.checked = 0;
+
+		return true;
+	}
+
+	/**
+	 * Files an entity of the current type into the grid for its world.
+	 * @param i The position of the entity in typeEntities.
+	 */
+	private void file(int i) {
+
+		Entity entity = this.typeEntities.get(i);
+		entity.getLocation(this.location);
+
+		this.mobWorlds[i] = entity.getWorld();
+		this.x[i] = this.location.getX();
+		this.y[i] = this.location.getY();
+		this.z[i] = this.location.getZ();
+
+		LongHashMap<int[]> grid = this.grids.get(this.mobWorlds[i]);
+
+		if (grid == null) {
+			grid = new LongHashMap<int[]>();
+			this.grids.put(this.mobWorlds[i], grid);
+		}
+
+		long key = ChunkKey.of(cell(this.x[i], this.range), cell(this.z[i], this.range));
+		int[] head = grid.get(key);
+
+		if (head == null) {
+			head = new int[] { -1 };
+			grid.put(key, head);
+		}
+
+		this.next[i] = head[0];
+		head[0] = i;
+	}
+
+	/**
+	 * Pushes an entity of the current type if it has at least its limit of
+	 * others of the type nearby. Counting stops as soon as the limit is reached.
+	 * @param i The position of the entity in typeEntities.
+	 */
+	private void check(int i) {
+
+		LongHashMap<int[]> grid = this.grids.get(this.mobWorlds[i]);
+		int limit = this.typeLimit.getLimit();
+		int cellX = cell(this.x[i], this.range);
+		int cellZ = cell(this.z[i], this.range);
+		int count = 0;
+
+		for (int dx = -1; dx <= 1 && count < limit; dx++) {
+			for (int dz = -1; dz <= 1 && count < limit; dz++) {
+				int[] head = grid.get(ChunkKey.of(cellX + dx, cellZ + dz));
+
+				if (head == null) {
+					continue;
+				}
+
+				for (int j = head[0]; j != -1 && count < limit; j = this.next[j]) {
+					if (j != i
+							&& Math.abs(this.x[j] - this.x[i]) <= this.range
+							&& Math.abs(this.y[j] - this.y[i]) <= this.range
+							&& Math.abs(this.z[j] - this.z[i]) <= this.range) {
+						count++;
+					}
+				}
+			}
+		}
+
+		if (count >= limit) {
+			this.crowded.push(new EntityLimitPair(this.typeEntities.get(i), this.typeLimit));
+		}
+	}
+
+	/**
+	 * Lets go of the grid for the type just checked.
+	 */
+	private void finishType() {
+		this.typeEntities = null;
+		this.typeLimit = null;
+		this.mobWorlds = null;
+		this.x = null;
+		this.y = null;
+		this.z = null;
+		this.next = null;
+		this.grids = null;
+	}
+
+	/**
+	 * Returns the grid cell holding a coordinate.
+	 * @param coordinate The coordinate to place.
+	 * @param range The width of a cell.
+	 * @return The index of the cell along the coordinate's axis.
+	 */
+	private static int cell(double coordinate, int range) {
+		return (int) Math.floor(coordinate / range);
+	}
+}
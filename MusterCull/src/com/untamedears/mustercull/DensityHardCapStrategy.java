@@ -0,0 +1,60 @@
+package com.untamedears.mustercull;
+
+/**
+ * Culls mobs picked at random in proportion to how crowded the 7x7 chunks
+ * around them are, so the worst crowding is thinned first but no area is
+ * emptied outright.
+ */
+public class DensityHardCapStrategy implements HardCapStrategy {
+
+	/**
+	 * The planner to choose mobs for.
+	 */
+	private final HardCapPlanner planner;
+
+	/**
+	 * Constructor which takes the planner to choose mobs for.
+	 * @param planner The planner to choose mobs for.
+	 */
+	public DensityHardCapStrategy(HardCapPlanner planner) {
+		this.planner = planner;
+	}
+
+	/**
+	 * Chooses mobs to cull because the server is over the hard mob limit.
+	 * @param candidates The mobs which may be culled; may be reordered.
+	 * @param budget The number of mobs to cull.
+	 * @return How many of the budget were not culled.
+	 */
+	public int selectOverHardCap(int[] candidates, int budget) {
+		return budget - pick(candidates, budget);
+	}
+
+	/**
+	 * Chooses hostiles to cull to keep a world within its spawn limit.
+	 * @param hostiles The hostiles in the world which may be culled; may be reordered.
+	 * @param budget The number of hostiles to cull.
+	 * @return How many of the budget were not culled.
+	 */
+	public int selectHostiles(int[] hostiles, int budget) {
+		return budget - pick(hostiles, budget);
+	}
+
+	/**
+	 * Culls mobs picked in proportion to the number of mobs around them.
+	 * @param mobs The mobs to pick from.
+	 * @param count The number of mobs to cull.
+	 * @return The number of mobs culled.
+	 */
+	private int pick(int[] mobs, int count) {
+
+		int[] crowding = this.planner.getMobDensities(HardCapPlanner.SUPER_CHUNK_RADIUS);
+		double[] weights = new double[mobs.length];
+
+		for (int i = 0; i < mobs.length; i++) {
+			weights[i] = crowding[mobs[i]];
+		}
+
+		return MobSampler.sampleWeighted(mobs, weights, count, this.planner.getPlan(), this.planner.getRandom());
+	}
+}
@@ -0,0 +1,433 @@
+package com.untamedears.mustercull;
+
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.LivingEntity;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Files mobs per world by chunk column and EntityType.
+ *
+ * This answers "how many of a type are within a box" by looking only at the
+ * mobs filed in the chunk columns the box covers, instead of asking Bukkit
+ * for every nearby entity. Each of those mobs is checked against the box
+ * from its current location, so mobs outside the range are never counted.
+ *
+ * Mobs are filed from spawn, death and chunk events. Mobs wander between
+ * columns without any event, so reconcile() re-files strays and drops mobs
+ * which have gone, working from the index itself rather than every entity.
+ * Must only be used on the main thread.
+ */
+public class EntityGridIndex {
+
+	/**
+	 * The mobs of one type filed in one chunk column.
+	 */
+	private static class Column {
+
+		/**
+		 * The mobs, in slots 0 to size - 1.
+		 */
+		private Entity[] mobs = new Entity[4];
+
+		/**
+		 * The number of mobs filed.
+		 */
+		private int size = 0;
+
+		/**
+		 * Files a mob in the column.
+		 * @param entity The mob to file.
+		 */
+		private void add(Entity entity) {
+
+			if (this.size == this.mobs.length) {
+				Entity[] grown = new Entity[this.size * 2];
+				System.arraycopy(this.mobs, 0, grown, 0, this.size);
+				this.mobs = grown;
+			}
+
+			this.mobs[this.size++] = entity;
+		}
+
+		/**
+		 * Removes the mob in a slot, moving the last mob into its place.
+		 * @param i The slot to empty.
+		 */
+		private void removeAt(int i) {
+			this.mobs[i] = this.mobs[--this.size];
+			this.mobs[this.size] = null;
+		}
+	}
+
+	/**
+	 * Filed mobs for a single world.
+	 */
+	private static class WorldGrid {
+
+		/**
+		 * Columns by type, then by chunk key.
+		 */
+		private final Map<EntityType, LongHashMap<Column>> byType = new EnumMap<EntityType, LongHashMap<Column>>(EntityType.class);
+	}
+
+	/**
+	 * Filed mobs for each world, keyed by world UID.
+	 */
+	private Map<UUID, WorldGrid> worldGrids = new HashMap<UUID, WorldGrid>();
+
+	/**
+	 * Scratch location for reading where mobs are.
+	 */
+	private Location scratch = new Location(null, 0, 0, 0);
+
+	/**
+	 * Returns the grid for a world, creating it if needed.
+	 * @param world The world to return a grid for.
+	 * @return The grid for the world.
+	 */
+	private WorldGrid getWorldGrid(World world) {
+
+		WorldGrid grid = this.worldGrids.get(world.getUID());
+
+		if (grid == null) {
+			grid = new WorldGrid();
+			this.worldGrids.put(world.getUID(), grid);
+		}
+
+		return grid;
+	}
+
+	/**
+	 * Files a mob in the column it is now standing in.
+	 * @param grid The grid for the world.
+	 * @param entity The mob to file.
+	 */
+	private void file(WorldGrid grid, Entity entity) {
+
+		LongHashMap<Column> columns = grid.byType.get(entity.getType());
+
+		if (columns == null) {
+			columns = new LongHashMap<Column>();
+			grid.byType.put(entity.getType(), columns);
+		}
+
+		entity.getLocation(this.scratch);
+		long key = ChunkKey.ofBlock(this.scratch.getBlockX(), this.scratch.getBlockZ());
+		Column column = columns.get(key);
+
+		if (column == null) {
+			column = new Column();
+			columns.put(key, column);
+		}
+
+		column.add(entity);
+	}
+
+	/**
+	 * Indexes a mob which has entered a world.
+	 * @param entity The entity which has entered a world.
+	 */
+	public void add(Entity entity) {
+		if (MobCounter.isCounted(entity)) {
+			file(getWorldGrid(entity.getWorld()), entity);
+		}
+	}
+
+	/**
+	 * Unindexes a mob which has left a world. A mob no longer in the column
+	 * it was filed in is left for reconcile() to drop.
+	 * @param entity The entity which has left a world.
+	 */
+	public void remove(Entity entity) {
+
+		if (!MobCounter.isCounted(entity)) {
+			return;
+		}
+
+		WorldGrid grid = this.worldGrids.get(entity.getWorld().getUID());
+		LongHashMap<Column> columns = (grid == null) ? null : grid.byType.get(entity.getType());
+
+		if (columns == null) {
+			return;
+		}
+
+		entity.getLocation(this.scratch);
+		long key = ChunkKey.ofBlock(this.scratch.getBlockX(), this.scratch.getBlockZ());
+		Column column = columns.get(key);
+
+		if (column == null) {
+			return;
+		}
+
+		for (int i = 0; i < column.size; i++) {
+			if (column.mobs[i] == entity) {
+				column.removeAt(i);
+				break;
+			}
+		}
+
+		if (column.size == 0) {
+			columns.remove(key);
+		}
+	}
+
+	/**
+	 * Indexes the mobs in a chunk which has just been loaded.
+	 * @param chunk The chunk which was loaded.
+	 */
+	public void addChunk(Chunk chunk) {
+
+		WorldGrid grid = getWorldGrid(chunk.getWorld());
+
+		for (Entity entity : chunk.getEntities()) {
+			if (MobCounter.isCounted(entity) && !entity.isDead()) {
+				file(grid, entity);
+			}
+		}
+	}
+
+	/**
+	 * Drops a chunk which is being unloaded from the index. Mobs filed there
+	 * which have since wandered into another chunk are filed again.
+	 * @param chunk The chunk which is being unloaded.
+	 */
+	public void removeChunk(Chunk chunk) {
+
+		WorldGrid grid = this.worldGrids.get(chunk.getWorld().getUID());
+
+		if (grid == null) {
+			return;
+		}
+
+		long key = ChunkKey.of(chunk.getX(), chunk.getZ());
+		List<Entity> strays = null;
+
+		for (LongHashMap<Column> columns : grid.byType.values()) {
+			Column column = columns.remove(key);
+
+			if (column == null) {
+				continue;
+			}
+
+			for (int i = 0; i < column.size; i++) {
+				Entity entity = column.mobs[i];
+				entity.getLocation(this.scratch);
+
+				if (entity.isValid() && ChunkKey.ofBlock(this.scratch.getBlockX(), this.scratch.getBlockZ()) != key) {
+					if (strays == null) {
+						strays = new ArrayList<Entity>();
+					}
+
+					strays.add(entity);
+				}
+			}
+		}
+
+		if (strays != null) {
+			for (Entity entity : strays) {
+				file(grid, entity);
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds the index for a world from its living entities. Only needed
+	 * when nothing has been filed for the world yet.
+	 * @param world The world to rebuild.
+	 */
+	public void rebuild(World world) {
+
+		WorldGrid grid = new WorldGrid();
+		this.worldGrids.put(world.getUID(), grid);
+
+		for (LivingEntity entity : world.getLivingEntities()) {
+			if (MobCounter.isCounted(entity) && !entity.isDead()) {
+				file(grid, entity);
+			}
+		}
+	}
+
+	/**
+	 * Files mobs which have wandered into another column again and drops
+	 * mobs which have died or gone, looking only at the mobs already filed.
+	 * @param world The world to reconcile.
+	 */
+	public void reconcile(World world) {
+
+		WorldGrid grid = this.worldGrids.get(world.getUID());
+
+		if (grid == null) {
+			return;
+		}
+
+		List<Entity> strays = new ArrayList<Entity>();
+
+		for (LongHashMap<Column> columns : grid.byType.values()) {
+			long[] empty = null;
+			int emptyCount = 0;
+
+			for (int slot = 0; slot < columns.capacity(); slot++) {
+				Column column = columns.valueAt(slot);
+
+				if (column == null) {
+					continue;
+				}
+
+				long key = columns.keyAt(slot);
+
+				for (int i = column.size - 1; i >= 0; i--) {
+					Entity entity = column.mobs[i];
+
+					if (!entity.isValid()) {
+						column.removeAt(i);
+						continue;
+					}
+
+					entity.getLocation(this.scratch);
+
+					if (ChunkKey.ofBlock(this.scratch.getBlockX(), this.scratch.getBlockZ()) != key) {
+						column.removeAt(i);
+						strays.add(entity);
+					}
+				}
+
+				if (column.size == 0) {
+					if (empty == null) {
+						empty = new long[columns.size()];
+					}
+
+					empty[emptyCount++] = key;
+				}
+			}
+
+			// Removing shifts entries between slots, so wait until the walk is done.
+			for (int i = 0; i < emptyCount; i++) {
+				columns.remove(empty[i]);
+			}
+		}
+
+		for (Entity entity : strays) {
+			file(grid, entity);
+		}
+	}
+
+	/**
+	 * Forgets the index for a world which is being unloaded.
+	 * @param world The world to forget.
+	 */
+	public void removeWorld(World world) {
+		this.worldGrids.remove(world.getUID());
+	}
+
+	/**
+	 * Returns the number of mobs of a type within a box around a location.
+	 * @param world The world to look in.
+	 * @param type The type of mob to count.
+	 * @param location The center of the box.
+	 * @param range The distance from the center to each face of the box.
+	 * @param stopAt Stop counting once this many have been found.
+	 * @param exclude A mob not to count, such as the one being checked, or null.
+	 * @return The number of mobs found, up to stopAt.
+	 */
+	public int count(World world, EntityType type, Location location, int range, int stopAt, Entity exclude) {
+
+		WorldGrid grid = this.worldGrids.get(world.getUID());
+
+		if (grid == null) {
+			return 0;
+		}
+
+		LongHashMap<Column> columns = grid.byType.get(type);
+
+		if (columns == null || columns.isEmpty()) {
+			return 0;
+		}
+
+		double x = location.getX();
+		double y = location.getY();
+		double z = location.getZ();
+		int minX = (location.getBlockX() - range) >> 4;
+		int maxX = (location.getBlockX() + range) >> 4;
+		int minZ = (location.getBlockZ() - range) >> 4;
+		int maxZ = (location.getBlockZ() + range) >> 4;
+
+		int count = 0;
+		long area = ((long) (maxX - minX + 1)) * (maxZ - minZ + 1);
+
+		if (area > columns.size()) {
+			// Fewer occupied columns than the box covers; walk those instead.
+			for (int i = 0; i < columns.capacity() && count < stopAt; i++) {
+				Column column = columns.valueAt(i);
+
+				if (column == null) {
+					continue;
+				}
+
+				long key = columns.keyAt(i);
+				int chunkX = ChunkKey.getX(key);
+				int chunkZ = ChunkKey.getZ(key);
+
+				if (chunkX >= minX && chunkX <= maxX && chunkZ >= minZ && chunkZ <= maxZ) {
+					count += countWithin(column, x, y, z, range, stopAt - count, exclude);
+				}
+			}
+		}
+		else {
+			for (int chunkX = minX; chunkX <= maxX && count < stopAt; chunkX++) {
+				for (int chunkZ = minZ; chunkZ <= maxZ && count < stopAt; chunkZ++) {
+					Column column = columns.get(ChunkKey.of(chunkX, chunkZ));
+
+					if (column != null) {
+						count += countWithin(column, x, y, z, range, stopAt - count, exclude);
+					}
+				}
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Counts the mobs in a column within range of a point on every axis.
+	 * @param column The column to look in.
+	 * @param x The x coordinate of the point.
+	 * @param y The y coordinate of the point.
+	 * @param z The z coordinate of the point.
+	 * @param range The distance from the point to count within.
+	 * @param stopAt Stop counting once this many have been found.
+	 * @param exclude A mob not to count, or null.
+	 * @return The number of mobs found, up to stopAt.
+	 */
+	private int countWithin(Column column, double x, double y, double z, int range, int stopAt, Entity exclude) {
+
+		int count = 0;
+
+		for (int i = 0; i < column.size && count < stopAt; i++) {
+			Entity entity = column.mobs[i];
+
+			if (entity == exclude || entity.isDead()) {
+				continue;
+			}
+
+			entity.getLocation(this.scratch);
+
+			if (Math.abs(this.scratch.getX() - x) <= range
+					&& Math.abs(this.scratch.getY() - y) <= range
+					&& Math.abs(this.scratch.getZ() - z) <= range) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+}
@@ -0,0 +1,41 @@
+package com.untamedears.mustercull;
+
+import org.bukkit.World;
+
+import java.util.List;
+
+/**
+ * This class periodically reconciles the spatial entity index, one world
+ * per run in turn, re-filing mobs which have wandered between chunks.
+ */
+public class EntityIndexLaborer extends Laborer {
+
+	/**
+	 * Constructor which takes a reference to the main plug-in class.
+	 * @param pluginInstance A reference to the main plug-in class.
+	 */
+	public EntityIndexLaborer(MusterCull pluginInstance) {
+		super(pluginInstance);
+	}
+
+	/**
+	 * Index of the world to reconcile next.
+	 */
+	private int nextWorld = 0;
+
+	/**
+	 * Repeating reconcile method for the class.
+	 */
+	@Override
+	public void run() {
+
+		List<World> worlds = this.getPluginInstance().getServer().getWorlds();
+
+		if (worlds.isEmpty()) {
+			return;
+		}
+
+		this.nextWorld = (this.nextWorld + 1) % worlds.size();
+		this.getPluginInstance().getEntityIndex().reconcile(worlds.get(this.nextWorld));
+	}
+}
@@ -6,6 +6,8 @@ import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.entity.CreatureSpawnEvent;
 import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
+import org.bukkit.event.entity.EntityDeathEvent;
+import org.bukkit.event.entity.SpawnerSpawnEvent;
 
 /**
  * This class provides event handlers for game entities.
@@ -29,9 +31,9 @@ public class EntityListener extends Listener {
 	@EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled=true)
 	public void onCreatureSpawn(CreatureSpawnEvent event) {
 
-		/* If over hard mob limit, stop all mob spawning.
-		 * The entity in this event isn't included in overHardMobLimit so account for this. */
-		if (getPluginInstance().overHardMobLimit() + 1 > 0) {
+		/* If at the hard mob limit, stop all mob spawning until culls and deaths bring the count back down.
+		 * The entity in this event isn't counted yet, so the gate closes with the count at the limit. */
+		if (getPluginInstance().isSpawnGateClosed()) {
 			/* Always let a player join. */
 			if (! (event.getEntity() instanceof Player)) {
 				event.setCancelled(true);
@@ -39,31 +41,89 @@ public class EntityListener extends Listener {
 			}
 		}
 		
+		/* Near the hard mob limit, thin spawns out before it is reached. */
+		if (!(event.getEntity() instanceof Player) && !getPluginInstance().admitSpawn(event.getLocation().getWorld())) {
+			event.setCancelled(true);
+			return;
+		}
+		
 		Entity entity = event.getEntity();
 		ConfigurationLimit limit = null;
 		
-		if (!this.getPluginInstance().isPaused(CullType.SPAWNER)) {
-			if (event.getSpawnReason() == SpawnReason.SPAWNER) {
-				
-				limit = this.getPluginInstance().getLimit(entity.getType(), CullType.SPAWNER);
-				
-				if (limit != null) {
-					event.setCancelled(this.getPluginInstance().runEntityChecks(entity, limit));
-					return;
-				}	
-			}
+		// Spawner mobs are checked per spawner in onSpawnerSpawn.
+		if (event.getSpawnReason() == SpawnReason.SPAWNER) {
+			return;
 		}
 		
 		if (!this.getPluginInstance().isPaused(CullType.SPAWN)) {
-			if (event.getSpawnReason() != SpawnReason.SPAWNER) {
-				limit = this.getPluginInstance().getLimit(entity.getType(), CullType.SPAWN);
-				
-				if (limit != null) {
-					event.setCancelled(this.getPluginInstance().runEntityChecks(entity, limit));
-					return;
-				}
+			limit = this.getPluginInstance().getLimit(entity.getType(), CullType.SPAWN);
+			
+			if (limit != null) {
+				event.setCancelled(this.getPluginInstance().runEntityChecks(entity, limit));
+				return;
 			}
 		}
 	}
 	
+	/**
+	 * This handler is called when a spawner block is producing a mob.
+	 * @param event A reference to the associated Bukkit event.
+	 */
+	@EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled=true)
+	public void onSpawnerSpawn(SpawnerSpawnEvent event) {
+		
+		if (this.getPluginInstance().isPaused(CullType.SPAWNER) || event.getSpawner() == null) {
+			return;
+		}
+		
+		Entity entity = event.getEntity();
+		ConfigurationLimit limit = this.getPluginInstance().getLimit(entity.getType(), CullType.SPAWNER);
+		
+		if (limit != null) {
+			event.setCancelled(this.getPluginInstance().runSpawnerChecks(entity, event.getSpawner(), limit));
+		}
+	}
+	
+	/**
+	 * This handler is called once a spawn has gone through, to count the mob.
+	 * @param event A reference to the associated Bukkit event.
+	 */
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled=true)
+	public void onCreatureSpawned(CreatureSpawnEvent event) {
+		getPluginInstance().getSpawnRateTracker().recordSpawn(event.getEntity().getWorld(), event.getSpawnReason(), getPluginInstance().getCurrentTick());
+		if (event.getSpawnReason() == SpawnReason.SPAWNER) {
+			getPluginInstance().getSpawnerRegistry().recordSpawn(event.getEntity());
+		}
+		getPluginInstance().getMobCounter().add(event.getEntity());
+		getPluginInstance().getEntityIndex().add(event.getEntity());
+	}
+	
+	/**
+	 * This handler is called when an entity dies, to clear the drops of
+	 * mobs the hard cap is killing without drops.
+	 * @param event A reference to the associated Bukkit event.
+	 */
+	@EventHandler(priority = EventPriority.HIGHEST)
+	public void onCulledDeath(EntityDeathEvent event) {
+		if (getPluginInstance().getPendingDeaths().isDropsSuppressed(event.getEntity())) {
+			event.getDrops().clear();
+			event.setDroppedExp(0);
+		}
+	}
+	
+	/**
+	 * This handler is called when an entity dies, to uncount the mob.
+	 * @param event A reference to the associated Bukkit event.
+	 */
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void onEntityDeath(EntityDeathEvent event) {
+		if (MobCounter.isCounted(event.getEntity())) {
+			getPluginInstance().getSpawnRateTracker().recordDeath(event.getEntity().getWorld(), getPluginInstance().getCurrentTick());
+		}
+		getPluginInstance().getMobCounter().remove(event.getEntity());
+		getPluginInstance().getPendingDeaths().remove(event.getEntity());
+		getPluginInstance().getEntityIndex().remove(event.getEntity());
+		getPluginInstance().invalidateSpawnVerdicts(event.getEntity());
+	}
+	
 }
@@ -1,8 +1,28 @@
 package com.untamedears.mustercull;
 
 enum GlobalCullCullingStrategyType {
-	RANDOM
-	, PRIORITY;
+	RANDOM {
+		public HardCapStrategy createStrategy(HardCapPlanner planner) {
+			return new RandomHardCapStrategy(planner);
+		}
+	}
+	, PRIORITY {
+		public HardCapStrategy createStrategy(HardCapPlanner planner) {
+			return new PriorityHardCapStrategy(planner);
+		}
+	}
+	, DENSITY {
+		public HardCapStrategy createStrategy(HardCapPlanner planner) {
+			return new DensityHardCapStrategy(planner);
+		}
+	};
+	
+	/**
+	 * Creates this strategy for one planning pass.
+	 * @param planner The planner the strategy chooses mobs for.
+	 * @return The strategy.
+	 */
+	public abstract HardCapStrategy createStrategy(HardCapPlanner planner);
 	
 	public static GlobalCullCullingStrategyType fromName(String name) {
 			
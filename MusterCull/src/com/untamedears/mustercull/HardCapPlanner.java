@@ -0,0 +1,529 @@
+package com.untamedears.mustercull;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Works out which mobs a hard cap pass should cull, from a MobSnapshot.
+ *
+ * Everything the planner needs is copied in when it is created, so plan()
+ * can run off the main thread. It never touches an entity; the plan is
+ * applied by the HardCapLaborer back on the main thread.
+ *
+ * Each world is planned with its own HardCapStrategy. Worlds over their own
+ * cap are culled back to it first. Then, if the server is still over the
+ * hard mob limit, worlds sharing a strategy are planned together, and the
+ * rest of the mobs over the limit are shared between strategies by how many
+ * mobs their worlds hold.
+ */
+public class HardCapPlanner {
+
+	/**
+	 * Number of chunks from the center of a super chunk to its edge.
+	 */
+	static final int SUPER_CHUNK_RADIUS = 3;
+
+	/**
+	 * One more than the highest cull priority.
+	 */
+	private static final int PRIORITY_COUNT = Byte.MAX_VALUE + 1;
+
+	/**
+	 * The mobs to plan for.
+	 */
+	private final MobSnapshot snapshot;
+
+	/**
+	 * Reusable buckets for grouping mobs by chunk.
+	 */
+	private final ChunkBuckets chunkBuckets;
+
+	/**
+	 * The plan being built.
+	 */
+	private final CullPlan plan;
+
+	/**
+	 * The logger to report culls to.
+	 */
+	private final Logger logger;
+
+	/**
+	 * How many mobs over the hard mob limit the server was.
+	 */
+	private final int overHardMobLimit;
+
+	/**
+	 * How many mobs over its own cap each world was, by world number.
+	 */
+	private final int[] worldOverLimits;
+
+	/**
+	 * The strategy for choosing mobs to cull in each world, by world number.
+	 */
+	private final GlobalCullCullingStrategyType[] worldStrategies;
+
+	/**
+	 * The strategies made for this plan, by GlobalCullCullingStrategyType ordinal.
+	 */
+	private final HardCapStrategy[] strategies = new HardCapStrategy[GlobalCullCullingStrategyType.values().length];
+
+	/**
+	 * Nanoseconds each strategy spent choosing, by GlobalCullCullingStrategyType ordinal, or -1 if unused.
+	 */
+	private final long[] planTimes = new long[GlobalCullCullingStrategyType.values().length];
+
+	/**
+	 * How to cull the mobs each strategy chooses, by GlobalCullCullingStrategyType ordinal.
+	 */
+	private final CullAction[] strategyActions = new CullAction[GlobalCullCullingStrategyType.values().length];
+
+	/**
+	 * How to cull mobs of each cull priority whatever the strategy, or null to leave it to the strategy.
+	 */
+	private final CullAction[] priorityActions = new CullAction[PRIORITY_COUNT];
+
+	/**
+	 * The share of the cull score a group of chunks needs for a penalty purge.
+	 */
+	private final float penaltyMobPercent;
+
+	/**
+	 * The most crowded groups of chunks to purge in a pass.
+	 */
+	private final int maxPenaltySuperChunks;
+
+	/**
+	 * Whether to cull hostiles down to the spawn limit.
+	 */
+	private final boolean hostileCull;
+
+	/**
+	 * Minimum and maximum percent of the hostile spawn limit to cull to.
+	 */
+	private final int minAggression, maxAggression;
+
+	/**
+	 * Maximum percent of hostiles to cull in a pass.
+	 */
+	private final int maxCullPerPass;
+
+	/**
+	 * Whether the RANDOM strategy favours mobs in crowded chunks.
+	 */
+	private final boolean densityWeighting;
+
+	/**
+	 * The number of mobs around each mob, by radius in chunks then mob number, or null if not yet counted.
+	 */
+	private final int[][] mobDensities = new int[SUPER_CHUNK_RADIUS + 1][];
+
+	/**
+	 * Source of randomness for choosing which mobs to cull.
+	 */
+	private final Random random = new Random();
+
+	/**
+	 * Constructor which copies in everything needed to plan.
+	 * @param snapshot The mobs to plan for.
+	 * @param chunkBuckets Buckets for grouping mobs by chunk, which are cleared before use.
+	 * @param logger The logger to report culls to.
+	 * @param overHardMobLimit How many mobs over the hard mob limit the server was.
+	 * @param worldOverLimits How many mobs over its own cap each world to cull was, by world name.
+	 * @param config The configuration to copy settings from.
+	 */
+	public HardCapPlanner(MobSnapshot snapshot, ChunkBuckets chunkBuckets, Logger logger, int overHardMobLimit, Map<String, Integer> worldOverLimits, Configuration config) {
+		this.snapshot = snapshot;
+		this.chunkBuckets = chunkBuckets;
+		this.plan = new CullPlan(snapshot.size());
+		this.logger = logger;
+		this.overHardMobLimit = overHardMobLimit;
+		this.penaltyMobPercent = config.getHardCapCullingPriorityStrategyPenaltyMobPercent();
+		this.maxPenaltySuperChunks = config.getHardCapPenaltySuperChunks();
+		this.hostileCull = config.monsterCullToSpawnEnabled();
+		this.minAggression = config.getMinimumMonsterCullAggression();
+		this.maxAggression = config.getMaximumMonsterCullAggression();
+		this.maxCullPerPass = config.getMaximumMonsterCullPerPass();
+		this.densityWeighting = config.getHardCapRandomDensityWeighting();
+
+		this.worldStrategies = new GlobalCullCullingStrategyType[snapshot.getWorldCount()];
+		this.worldOverLimits = new int[snapshot.getWorldCount()];
+
+		for (int world = 0; world < snapshot.getWorldCount(); world++) {
+			String name = snapshot.getWorldInfo(world).getName();
+			Integer over = worldOverLimits.get(name);
+
+			this.worldStrategies[world] = config.getHardCapCullingStrategy(name);
+			this.worldOverLimits[world] = over == null ? 0 : over;
+		}
+
+		for (GlobalCullCullingStrategyType type : GlobalCullCullingStrategyType.values()) {
+			this.strategyActions[type.ordinal()] = config.getHardCapCullAction(type);
+		}
+
+		for (int priority = 0; priority <= CullPriorityTable.TRANSIENT; priority++) {
+			this.priorityActions[priority] = config.getPriorityCullAction(priority);
+		}
+
+		Arrays.fill(this.planTimes, -1);
+	}
+
+	/**
+	 * Works out which mobs to cull.
+	 * @return The mobs to cull.
+	 */
+	public CullPlan plan() {
+
+		for (int world = 0; world < this.worldOverLimits.length; world++) {
+			if (this.worldOverLimits[world] > 0) {
+				this.plan.setHardCap(true);
+				cullOverWorldCap(world);
+			}
+		}
+
+		// Culls for the worlds' own caps count towards the hard mob limit.
+		if (this.overHardMobLimit - this.plan.size() > 0) {
+			this.plan.setHardCap(true);
+			cullOverHardCap(this.overHardMobLimit - this.plan.size());
+		}
+
+		if (this.hostileCull) {
+			keepHostilesWithinSpawnLimit();
+		}
+
+		return this.plan;
+	}
+
+	/**
+	 * Returns the mobs being planned for.
+	 * @return The mobs being planned for.
+	 */
+	MobSnapshot getSnapshot() {
+		return this.snapshot;
+	}
+
+	/**
+	 * Returns the plan being built.
+	 * @return The plan being built.
+	 */
+	CullPlan getPlan() {
+		return this.plan;
+	}
+
+	/**
+	 * Returns the reusable buckets for grouping mobs by chunk.
+	 * @return The buckets, which may be cleared and reused.
+	 */
+	ChunkBuckets getChunkBuckets() {
+		return this.chunkBuckets;
+	}
+
+	/**
+	 * Returns the logger to report culls to.
+	 * @return The logger to report culls to.
+	 */
+	Logger getLogger() {
+		return this.logger;
+	}
+
+	/**
+	 * Returns the share of the cull score a group of chunks needs for a penalty purge.
+	 * @return The penalty purge share.
+	 */
+	float getPenaltyMobPercent() {
+		return this.penaltyMobPercent;
+	}
+
+	/**
+	 * Returns the most crowded groups of chunks to purge in a pass.
+	 * @return The most penalty super chunks per pass.
+	 */
+	int getMaxPenaltySuperChunks() {
+		return this.maxPenaltySuperChunks;
+	}
+
+	/**
+	 * Returns whether the RANDOM strategy favours mobs in crowded chunks.
+	 * @return Whether to weight random culls by chunk density.
+	 */
+	boolean getDensityWeighting() {
+		return this.densityWeighting;
+	}
+
+	/**
+	 * Returns the source of randomness for choosing which mobs to cull.
+	 * @return The source of randomness.
+	 */
+	Random getRandom() {
+		return this.random;
+	}
+
+	/**
+	 * Returns how long a strategy spent choosing mobs for this plan.
+	 * @param strategy The strategy to check.
+	 * @return Nanoseconds spent, or -1 if the strategy was not used.
+	 */
+	public long getPlanTime(GlobalCullCullingStrategyType strategy) {
+		return this.planTimes[strategy.ordinal()];
+	}
+
+	/**
+	 * Returns the strategy for a world, making it the first time it is used.
+	 * @param world The world number.
+	 * @return The strategy, or null if the world has none.
+	 */
+	private HardCapStrategy getStrategy(int world) {
+
+		GlobalCullCullingStrategyType type = this.worldStrategies[world];
+
+		if (type == null) {
+			return null;
+		}
+
+		if (this.strategies[type.ordinal()] == null) {
+			this.strategies[type.ordinal()] = type.createStrategy(this);
+		}
+
+		return this.strategies[type.ordinal()];
+	}
+
+	/**
+	 * Adds the time a strategy spent choosing to its total, and sets how to
+	 * cull the mobs it chose.
+	 * @param type The strategy.
+	 * @param startTime When it started, from System.nanoTime().
+	 * @param planStart The size of the plan before it started.
+	 */
+	private void finishSelection(GlobalCullCullingStrategyType type, long startTime, int planStart) {
+		long time = System.nanoTime() - startTime;
+		this.planTimes[type.ordinal()] = Math.max(this.planTimes[type.ordinal()], 0) + time;
+
+		for (int i = planStart; i < this.plan.size(); i++) {
+			CullAction action = this.priorityActions[this.snapshot.getPriority(this.plan.get(i))];
+			this.plan.setAction(i, action != null ? action : this.strategyActions[type.ordinal()]);
+		}
+	}
+
+	/**
+	 * Culls the mobs in a world over its own cap, with the world's strategy.
+	 * @param world The world number.
+	 */
+	private void cullOverWorldCap(int world) {
+
+		HardCapStrategy strategy = getStrategy(world);
+
+		if (strategy == null) {
+			this.logger.warning("Hard Cap Laborer - Cannot determine culling strategy for " + this.snapshot.getWorldInfo(world).getName() + ", no work to do.");
+			return;
+		}
+
+		int count = 0;
+
+		for (int mob = 0; mob < this.snapshot.size(); mob++) {
+			if (this.snapshot.getWorld(mob) == world && !this.plan.contains(mob)) {
+				count++;
+			}
+		}
+
+		int[] candidates = new int[count];
+		count = 0;
+
+		for (int mob = 0; mob < this.snapshot.size(); mob++) {
+			if (this.snapshot.getWorld(mob) == world && !this.plan.contains(mob)) {
+				candidates[count++] = mob;
+			}
+		}
+
+		this.logger.info("Hard Cap Laborer - World " + this.snapshot.getWorldInfo(world).getName() + " is " + this.worldOverLimits[world] + " mobs over its own cap.");
+
+		int planStart = this.plan.size();
+		long startTime = System.nanoTime();
+		strategy.selectOverHardCap(candidates, this.worldOverLimits[world]);
+		finishSelection(this.worldStrategies[world], startTime, planStart);
+	}
+
+	/**
+	 * Culls the mobs over the hard mob limit, each strategy choosing from
+	 * the worlds which use it.
+	 * @param overHardMobLimit How many mobs over the hard mob limit are left to cull.
+	 */
+	private void cullOverHardCap(int overHardMobLimit) {
+
+		GlobalCullCullingStrategyType[] types = GlobalCullCullingStrategyType.values();
+		int[] counts = new int[types.length];
+		int total = 0;
+
+		for (int mob = 0; mob < this.snapshot.size(); mob++) {
+			GlobalCullCullingStrategyType type = this.worldStrategies[this.snapshot.getWorld(mob)];
+
+			if (type == null) {
+				continue;
+			}
+
+			if (!this.plan.contains(mob)) {
+				counts[type.ordinal()]++;
+				total++;
+			}
+		}
+
+		if (total < this.snapshot.size() - this.plan.size()) {
+			this.logger.warning("Hard Cap Laborer - Cannot determine culling strategy for some worlds, not culling there.");
+		}
+
+		int toKill = overHardMobLimit;
+		int left = total;
+
+		for (GlobalCullCullingStrategyType type : types) {
+			if (counts[type.ordinal()] == 0 || toKill <= 0) {
+				continue;
+			}
+
+			// Each strategy takes its worlds' share, and any the strategies before it could not cull.
+			left -= counts[type.ordinal()];
+			int budget = left == 0 ? toKill : (int) Math.min(toKill, (long) overHardMobLimit * counts[type.ordinal()] / total);
+
+			int[] candidates = new int[counts[type.ordinal()]];
+			int count = 0;
+			int strategyWorld = -1;
+
+			for (int mob = 0; mob < this.snapshot.size(); mob++) {
+				int world = this.snapshot.getWorld(mob);
+
+				if (this.worldStrategies[world] == type && !this.plan.contains(mob)) {
+					candidates[count++] = mob;
+					strategyWorld = world;
+				}
+			}
+
+			int planStart = this.plan.size();
+			long startTime = System.nanoTime();
+			int remaining = getStrategy(strategyWorld).selectOverHardCap(candidates, budget);
+			finishSelection(type, startTime, planStart);
+
+			toKill -= budget - remaining;
+		}
+	}
+
+	/**
+	 * Returns the number of mobs around each mob, counting them the first
+	 * time. Only mobs in the same world are counted.
+	 * @param radius The number of chunks from the mob's chunk to count within, up to SUPER_CHUNK_RADIUS.
+	 * @return The number of mobs around each mob, including itself, by mob number.
+	 */
+	int[] getMobDensities(int radius) {
+
+		if (this.mobDensities[radius] != null) {
+			return this.mobDensities[radius];
+		}
+
+		ChunkBuckets chunks = this.chunkBuckets;
+		int[] densities = new int[this.snapshot.size()];
+		long[] window = new long[2];
+
+		for (int world = 0; world < this.snapshot.getWorldCount(); world++) {
+			chunks.clear();
+
+			for (int mob = 0; mob < this.snapshot.size(); mob++) {
+				if (this.snapshot.getWorld(mob) == world) {
+					chunks.add(this.snapshot.getChunkX(mob), this.snapshot.getChunkZ(mob), mob);
+				}
+			}
+
+			ChunkWindowSums windows = radius == 0 ? null : new ChunkWindowSums(chunks, new int[chunks.getBucketCount()]);
+
+			for (int bucket = 0; bucket < chunks.getBucketCount(); bucket++) {
+				int density = chunks.getSize(bucket);
+
+				if (windows != null) {
+					windows.sumWindow(chunks.getChunkX(bucket), chunks.getChunkZ(bucket), radius, window);
+					density = (int) window[1];
+				}
+
+				for (int entry = chunks.first(bucket); entry != -1; entry = chunks.next(entry)) {
+					densities[chunks.getMob(entry)] = density;
+				}
+			}
+		}
+
+		this.mobDensities[radius] = densities;
+		return densities;
+	}
+
+	/**
+	 * Culls hostiles in each world down to a share of its natural spawn limit.
+	 */
+	private void keepHostilesWithinSpawnLimit() {
+
+		int worldCount = this.snapshot.getWorldCount();
+		int[] hostileCounts = new int[worldCount];
+
+		// Only hostiles are walked; the snapshot indexes them as it is taken.
+		int hostileCount = this.snapshot.getHostileCount();
+
+		for (int n = 0; n < hostileCount; n++) {
+			int mob = this.snapshot.getHostileMob(n);
+
+			if (!this.plan.contains(mob)) {
+				hostileCounts[this.snapshot.getWorld(mob)]++;
+			}
+		}
+
+		int[][] hostilesByWorld = new int[worldCount][];
+
+		for (int world = 0; world < worldCount; world++) {
+			hostilesByWorld[world] = new int[hostileCounts[world]];
+			hostileCounts[world] = 0;
+		}
+
+		for (int n = 0; n < hostileCount; n++) {
+			int mob = this.snapshot.getHostileMob(n);
+
+			if (!this.plan.contains(mob)) {
+				int world = this.snapshot.getWorld(mob);
+				hostilesByWorld[world][hostileCounts[world]++] = mob;
+			}
+		}
+
+		for (int world = 0; world < worldCount; world++) {
+			MobSnapshot.WorldInfo info = this.snapshot.getWorldInfo(world);
+			int[] hostiles = hostilesByWorld[world];
+
+			int naturalLimit = info.getMonsterSpawnLimit() * info.getSpawnChunkCount() / 256;
+
+			// Cull in a cycle, most aggressive at full moon, to encourage turnover rather than stasis
+			// Fluctuate aggression from 10% of the cap at full moon to 0 to the cap at new moon
+			double days = info.getFullTime() / 24000.0;
+			double cycleAmplitude = (1 + Math.cos(days * Math.PI * 0.25)) / 2.0;
+
+			int aggression = this.minAggression + ((int) (Math.round(cycleAmplitude * (this.maxAggression - this.minAggression))));
+			int percentageLimit = 100 - aggression;
+
+			this.logger.info("Hostile cull - World " + info.getName() + " contains " + hostiles.length + " of an allowed " + percentageLimit + "% of a hostile spawn limit of " + naturalLimit + ".");
+
+			int toKill = hostiles.length - (naturalLimit * percentageLimit / 100);
+
+			if (toKill >= 0 && hostiles.length > 0) {
+				int maxCull = this.maxCullPerPass * hostiles.length / 100;
+				if (toKill > maxCull) {
+					toKill = maxCull;
+				}
+				this.logger.info("Hostile cull in world " + info.getName() + " - culling " + toKill + " mobs.");
+
+				HardCapStrategy strategy = getStrategy(world);
+
+				if (strategy == null)
+				{
+					this.logger.warning("Hard Cap Hostile Cull - Cannot determine culling strategy, no work to do.");
+					continue;
+				}
+
+				int planStart = this.plan.size();
+				long startTime = System.nanoTime();
+				strategy.selectHostiles(hostiles, toKill);
+				finishSelection(this.worldStrategies[world], startTime, planStart);
+			}
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package com.untamedears.mustercull;
+
+/**
+ * A way of choosing which mobs a hard cap pass culls.
+ *
+ * A strategy is made for one HardCapPlanner, whose snapshot the candidates
+ * refer to and whose plan the chosen mobs are added to. It runs off the
+ * main thread, so it must not touch any entity.
+ */
+public interface HardCapStrategy {
+
+	/**
+	 * Chooses mobs to cull because the server is over the hard mob limit.
+	 * @param candidates The mobs which may be culled; may be reordered.
+	 * @param budget The number of mobs to cull.
+	 * @return How many of the budget were not culled.
+	 */
+	int selectOverHardCap(int[] candidates, int budget);
+
+	/**
+	 * Chooses hostiles to cull to keep a world within its spawn limit.
+	 * @param hostiles The hostiles in the world which may be culled; may be reordered.
+	 * @param budget The number of hostiles to cull.
+	 * @return How many of the budget were not culled.
+	 */
+	int selectHostiles(int[] hostiles, int budget);
+}
@@ -0,0 +1,42 @@
+package com.untamedears.mustercull;
+
+/**
+ * Whether mobs of a type count towards the hostile cull.
+ */
+enum HostileClass {
+
+	/**
+	 * Monsters, which count towards the hostile cull and may be culled by it.
+	 */
+	HOSTILE,
+	
+	/**
+	 * Monsters left out of the hostile cull, such as rare constructs.
+	 */
+	EXEMPT,
+	
+	/**
+	 * Mobs which are not monsters, which the hostile cull ignores.
+	 */
+	PASSIVE;
+	
+	/**
+	 * Returns a HostileClass representing the name provided.
+	 * @param name A case-insensitive name to compare to.
+	 * @return The HostileClass representing the name provided, or null.
+	 */
+	public static HostileClass fromName(String name) {
+		
+		if (name == null) {
+			return null;
+		}
+		
+		for (HostileClass hostileClass : values()) {
+			if (0 == name.compareToIgnoreCase(hostileClass.name())) {
+				return hostileClass;
+			}
+		}
+		
+		return null;
+	}
+}
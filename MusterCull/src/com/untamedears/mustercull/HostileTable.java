@@ -0,0 +1,118 @@
+package com.untamedears.mustercull;
+
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Monster;
+import org.bukkit.entity.Skeleton;
+import org.bukkit.entity.Skeleton.SkeletonType;
+
+/**
+ * An immutable table of which mob types count towards the hostile cull.
+ *
+ * Every EntityType is classified once, so a mob is classified by looking up
+ * its type rather than by a chain of instanceof checks. By default monsters
+ * are hostile, except withers, which are rare constructs; Ghasts, Slimes and
+ * Magma Cubes are not Monsters and are passive. Wither skeletons share the
+ * SKELETON type, so are the one case still told apart by looking at the mob.
+ */
+final class HostileTable {
+
+	/**
+	 * Every EntityType, indexed by ordinal.
+	 */
+	private static final EntityType[] TYPES = EntityType.values();
+
+	/**
+	 * The built-in table, used when the configuration overrides nothing.
+	 */
+	public static final HostileTable DEFAULT = new Builder().build();
+
+	/**
+	 * Collects classifications for a new table, starting from the defaults.
+	 */
+	public static class Builder {
+
+		/**
+		 * Classifications indexed by EntityType ordinal.
+		 */
+		private HostileClass[] classes = new HostileClass[TYPES.length];
+
+		/**
+		 * Constructor which starts from the default classifications.
+		 */
+		public Builder() {
+			for (EntityType type : TYPES) {
+				Class<?> entityClass = type.getEntityClass();
+
+				if (entityClass == null || !Monster.class.isAssignableFrom(entityClass)) {
+					this.classes[type.ordinal()] = HostileClass.PASSIVE;
+				}
+				else {
+					this.classes[type.ordinal()] = HostileClass.HOSTILE;
+				}
+			}
+
+			// Withers are rare constructs - exempt them
+			this.classes[EntityType.WITHER.ordinal()] = HostileClass.EXEMPT;
+		}
+
+		/**
+		 * Classifies a type, replacing its earlier classification.
+		 * @param type The type of mob.
+		 * @param hostileClass Whether mobs of the type count towards the hostile cull.
+		 * @return This builder.
+		 */
+		public Builder set(EntityType type, HostileClass hostileClass) {
+			this.classes[type.ordinal()] = hostileClass;
+			return this;
+		}
+
+		/**
+		 * Returns a table holding the classifications so far.
+		 * @return A new table.
+		 */
+		public HostileTable build() {
+			return new HostileTable(this.classes.clone());
+		}
+	}
+
+	/**
+	 * Classifications indexed by EntityType ordinal.
+	 */
+	private final HostileClass[] classes;
+
+	/**
+	 * Constructor which takes ownership of the classifications.
+	 * @param classes Classifications indexed by EntityType ordinal.
+	 */
+	private HostileTable(HostileClass[] classes) {
+		this.classes = classes;
+	}
+
+	/**
+	 * Returns the classification of a type.
+	 * @param type The type of mob.
+	 * @return Whether mobs of the type count towards the hostile cull.
+	 */
+	public HostileClass classOf(EntityType type) {
+		return this.classes[type.ordinal()];
+	}
+
+	/**
+	 * Returns whether a mob counts towards the hostile cull. Must be called
+	 * on the main thread.
+	 * @param mob The mob to classify.
+	 * @return Whether the mob counts towards the hostile cull.
+	 */
+	public boolean isHostile(LivingEntity mob) {
+
+		EntityType type = mob.getType();
+
+		if (this.classes[type.ordinal()] != HostileClass.HOSTILE) {
+			return false;
+		}
+
+		// Wither skeletons count as skeletons so are culled fast - exempt them
+		return type != EntityType.SKELETON || ((Skeleton) mob).getSkeletonType() != SkeletonType.WITHER;
+	}
+}
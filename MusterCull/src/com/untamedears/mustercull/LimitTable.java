@@ -0,0 +1,87 @@
+package com.untamedears.mustercull;
+
+import org.bukkit.entity.EntityType;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable lookup table of limits by EntityType and CullType.
+ *
+ * Tables are compiled from the configuration and replaced wholesale when a
+ * limit changes, so lookups from the spawn handlers never lock, allocate or
+ * see a half-edited table.
+ */
+public final class LimitTable {
+
+	/**
+	 * A table with no limits at all.
+	 */
+	public static final LimitTable EMPTY = new LimitTable(new ConfigurationLimit[EntityType.values().length][CullType.values().length], new int[EntityType.values().length]);
+
+	/**
+	 * Limits indexed by EntityType ordinal, then by CullType ordinal.
+	 */
+	private final ConfigurationLimit[][] limits;
+
+	/**
+	 * The largest SPAWN or SPAWNER range, indexed by EntityType ordinal.
+	 */
+	private final int[] spawnRanges;
+
+	/**
+	 * Constructor which takes ownership of a compiled table.
+	 * @param limits Limits indexed by EntityType ordinal, then by CullType ordinal.
+	 * @param spawnRanges The largest SPAWN or SPAWNER range, indexed by EntityType ordinal.
+	 */
+	private LimitTable(ConfigurationLimit[][] limits, int[] spawnRanges) {
+		this.limits = limits;
+		this.spawnRanges = spawnRanges;
+	}
+
+	/**
+	 * Compiles a table from limits grouped by EntityType.
+	 * @param mobLimits The limits for each EntityType.
+	 * @return A new table holding the limits.
+	 */
+	public static LimitTable compile(Map<EntityType, List<ConfigurationLimit>> mobLimits) {
+
+		ConfigurationLimit[][] limits = new ConfigurationLimit[EntityType.values().length][CullType.values().length];
+		int[] spawnRanges = new int[EntityType.values().length];
+
+		for (Map.Entry<EntityType, List<ConfigurationLimit>> entry : mobLimits.entrySet()) {
+			ConfigurationLimit[] byCulling = limits[entry.getKey().ordinal()];
+
+			for (ConfigurationLimit limit : entry.getValue()) {
+				ConfigurationLimit copy = new ConfigurationLimit(limit.getLimit(), limit.getCulling(), limit.getRange());
+				copy.clearDirty();
+				byCulling[limit.getCulling().ordinal()] = copy;
+
+				if (limit.getCulling() == CullType.SPAWN || limit.getCulling() == CullType.SPAWNER) {
+					spawnRanges[entry.getKey().ordinal()] = Math.max(spawnRanges[entry.getKey().ordinal()], limit.getRange());
+				}
+			}
+		}
+
+		return new LimitTable(limits, spawnRanges);
+	}
+
+	/**
+	 * Returns the limit for an EntityType and CullType.
+	 * @param entityType The type of entity to return a limit for.
+	 * @param cullType The method of culling to return a limit for.
+	 * @return The limit, or null if none is defined.
+	 */
+	public ConfigurationLimit get(EntityType entityType, CullType cullType) {
+		return this.limits[entityType.ordinal()][cullType.ordinal()];
+	}
+
+	/**
+	 * Returns the largest range of the SPAWN and SPAWNER limits for an EntityType.
+	 * @param entityType The type of entity to return a range for.
+	 * @return The largest range, or 0 if neither limit is defined.
+	 */
+	public int getSpawnRange(EntityType entityType) {
+		return this.spawnRanges[entityType.ordinal()];
+	}
+}
@@ -0,0 +1,238 @@
+package com.untamedears.mustercull;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from primitive long keys to values, without boxing the keys.
+ *
+ * Uses open addressing with linear probing. Null values are not allowed;
+ * an empty slot is one holding a null value. Slots can be walked directly
+ * with capacity(), keyAt() and valueAt() for iteration without allocation.
+ *
+ * @param <V> The type of values held in the map.
+ */
+public class LongHashMap<V> {
+
+	/**
+	 * The smallest table size to use.
+	 */
+	private static final int MINIMUM_CAPACITY = 16;
+
+	/**
+	 * Keys for each slot of the table.
+	 */
+	private long[] keys;
+
+	/**
+	 * Values for each slot of the table, or null if the slot is empty.
+	 */
+	private Object[] values;
+
+	/**
+	 * The number of entries in the map.
+	 */
+	private int size = 0;
+
+	/**
+	 * Constructor which creates an empty map.
+	 */
+	public LongHashMap() {
+		this(MINIMUM_CAPACITY);
+	}
+
+	/**
+	 * Constructor which creates an empty map sized for a number of entries.
+	 * @param expectedSize The number of entries expected in the map.
+	 */
+	public LongHashMap(int expectedSize) {
+		int capacity = MINIMUM_CAPACITY;
+
+		while (capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+
+		this.keys = new long[capacity];
+		this.values = new Object[capacity];
+	}
+
+	/**
+	 * Spreads the bits of a key over the table.
+	 * @param key The key to hash.
+	 * @return A well mixed hash of the key.
+	 */
+	static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+	/**
+	 * Returns the slot holding a key, or the empty slot where it would go.
+	 * @param key The key to look for.
+	 * @return The index of the slot.
+	 */
+	private int slotOf(long key) {
+		int mask = this.keys.length - 1;
+		int slot = hash(key) & mask;
+
+		while (this.values[slot] != null && this.keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+
+		return slot;
+	}
+
+	/**
+	 * Returns the value for a key.
+	 * @param key The key to look up.
+	 * @return The value for the key, or null if there is none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		return (V) this.values[slotOf(key)];
+	}
+
+	/**
+	 * Returns whether the map holds a value for a key.
+	 * @param key The key to look up.
+	 * @return Whether the map holds a value for the key.
+	 */
+	public boolean containsKey(long key) {
+		return this.values[slotOf(key)] != null;
+	}
+
+	/**
+	 * Sets the value for a key.
+	 * @param key The key to set a value for.
+	 * @param value The value for the key, which must not be null.
+	 * @return The previous value for the key, or null if there was none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+
+		if (value == null) {
+			throw new IllegalArgumentException("Value must not be null.");
+		}
+
+		int slot = slotOf(key);
+		V old = (V) this.values[slot];
+
+		this.keys[slot] = key;
+		this.values[slot] = value;
+
+		if (old == null && ++this.size * 2 > this.keys.length) {
+			resize(this.keys.length * 2);
+		}
+
+		return old;
+	}
+
+	/**
+	 * Removes the value for a key.
+	 * @param key The key to remove.
+	 * @return The value which was removed, or null if there was none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+
+		int mask = this.keys.length - 1;
+		int slot = slotOf(key);
+		V old = (V) this.values[slot];
+
+		if (old == null) {
+			return null;
+		}
+
+		// Shift later entries of the probe run back so lookups still find them.
+		int next = (slot + 1) & mask;
+
+		while (this.values[next] != null) {
+			int home = hash(this.keys[next]) & mask;
+
+			if (((next - home) & mask) >= ((next - slot) & mask)) {
+				this.keys[slot] = this.keys[next];
+				this.values[slot] = this.values[next];
+				slot = next;
+			}
+
+			next = (next + 1) & mask;
+		}
+
+		this.values[slot] = null;
+		this.size--;
+		return old;
+	}
+
+	/**
+	 * Removes every entry, keeping the table allocated for reuse.
+	 */
+	public void clear() {
+		Arrays.fill(this.values, null);
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the number of entries in the map.
+	 * @return The number of entries in the map.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns whether the map is empty.
+	 * @return Whether the map is empty.
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Returns the number of slots, for walking the table with keyAt and valueAt.
+	 * @return The number of slots in the table.
+	 */
+	public int capacity() {
+		return this.keys.length;
+	}
+
+	/**
+	 * Returns the key held in a slot. Only meaningful if valueAt is not null.
+	 * @param slot The index of the slot.
+	 * @return The key held in the slot.
+	 */
+	public long keyAt(int slot) {
+		return this.keys[slot];
+	}
+
+	/**
+	 * Returns the value held in a slot.
+	 * @param slot The index of the slot.
+	 * @return The value held in the slot, or null if the slot is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	public V valueAt(int slot) {
+		return (V) this.values[slot];
+	}
+
+	/**
+	 * Moves every entry into a table of a new size.
+	 * @param capacity The new number of slots, a power of two.
+	 */
+	private void resize(int capacity) {
+
+		long[] oldKeys = this.keys;
+		Object[] oldValues = this.values;
+
+		this.keys = new long[capacity];
+		this.values = new Object[capacity];
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != null) {
+				int slot = slotOf(oldKeys[i]);
+				this.keys[slot] = oldKeys[i];
+				this.values[slot] = oldValues[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package com.untamedears.mustercull;
+
+import org.bukkit.World;
+
+/**
+ * This class periodically corrects the live mob counts against the worlds.
+ */
+public class MobCountLaborer extends Laborer {
+
+	/**
+	 * Constructor which takes a reference to the main plug-in class.
+	 * @param pluginInstance A reference to the main plug-in class.
+	 */
+	public MobCountLaborer(MusterCull pluginInstance) {
+		super(pluginInstance);
+	}
+
+	/**
+	 * Repeating reconciliation method for the class.
+	 */
+	@Override
+	public void run() {
+
+		MobCounter counter = this.getPluginInstance().getMobCounter();
+
+		for (World world : this.getPluginInstance().getServer().getWorlds()) {
+			counter.reconcile(world);
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package com.untamedears.mustercull;
+
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Player;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps live counts of living non-player mobs per world and per EntityType.
+ *
+ * Counts are kept up to date from spawn, death and chunk events so that the
+ * hard cap can be checked without walking every world. Anything the events
+ * miss (despawns, removals by other plug-ins) is corrected by reconcile().
+ */
+public class MobCounter {
+
+	/**
+	 * Counts for a single world.
+	 */
+	private static class WorldCount {
+
+		/**
+		 * Number of mobs by EntityType ordinal.
+		 */
+		private final int[] byType = new int[EntityType.values().length];
+
+		/**
+		 * Number of mobs of any type.
+		 */
+		private int total = 0;
+	}
+
+	/**
+	 * Counts for each world, keyed by world UID.
+	 */
+	private Map<UUID, WorldCount> worldCounts = new HashMap<UUID, WorldCount>();
+
+	/**
+	 * Number of mobs across all worlds.
+	 */
+	private int total = 0;
+
+	/**
+	 * Returns the counts for a world, creating them if needed.
+	 * @param world The world to return counts for.
+	 * @return The counts for the world.
+	 */
+	private WorldCount getWorldCount(World world) {
+
+		WorldCount count = this.worldCounts.get(world.getUID());
+
+		if (count == null) {
+			count = new WorldCount();
+			this.worldCounts.put(world.getUID(), count);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Returns whether an entity is something this counter keeps track of.
+	 * @param entity The entity to test.
+	 * @return Whether the entity is a living non-player mob.
+	 */
+	public static boolean isCounted(Entity entity) {
+		return (entity instanceof LivingEntity) && !(entity instanceof Player);
+	}
+
+	/**
+	 * Adjusts the count for a world and type by the given amount.
+	 * @param world The world the mob is in.
+	 * @param type The type of the mob.
+	 * @param delta The amount to adjust the count by.
+	 */
+	private void adjust(World world, EntityType type, int delta) {
+
+		WorldCount count = getWorldCount(world);
+		int ordinal = type.ordinal();
+
+		// Never go negative; a missed spawn is fixed up by the next reconcile.
+		if (count.byType[ordinal] + delta < 0) {
+			delta = -count.byType[ordinal];
+		}
+
+		count.byType[ordinal] += delta;
+		count.total += delta;
+		this.total += delta;
+	}
+
+	/**
+	 * Counts a mob which has entered a world.
+	 * @param entity The entity which has entered a world.
+	 */
+	public void add(Entity entity) {
+		if (isCounted(entity)) {
+			adjust(entity.getWorld(), entity.getType(), 1);
+		}
+	}
+
+	/**
+	 * Uncounts a mob which has left a world.
+	 * @param entity The entity which has left a world.
+	 */
+	public void remove(Entity entity) {
+		if (isCounted(entity)) {
+			adjust(entity.getWorld(), entity.getType(), -1);
+		}
+	}
+
+	/**
+	 * Counts the mobs in a chunk which has just been loaded.
+	 * @param chunk The chunk which was loaded.
+	 */
+	public void addChunk(Chunk chunk) {
+		for (Entity entity : chunk.getEntities()) {
+			if (isCounted(entity) && !entity.isDead()) {
+				adjust(chunk.getWorld(), entity.getType(), 1);
+			}
+		}
+	}
+
+	/**
+	 * Uncounts the mobs in a chunk which is being unloaded.
+	 * @param chunk The chunk which is being unloaded.
+	 */
+	public void removeChunk(Chunk chunk) {
+		for (Entity entity : chunk.getEntities()) {
+			if (isCounted(entity) && !entity.isDead()) {
+				adjust(chunk.getWorld(), entity.getType(), -1);
+			}
+		}
+	}
+
+	/**
+	 * Recounts a world from scratch, correcting any drift.
+	 * @param world The world to recount.
+	 * @return The difference between the old count and the actual count.
+	 */
+	public int reconcile(World world) {
+
+		WorldCount count = new WorldCount();
+
+		for (LivingEntity entity : world.getLivingEntities()) {
+			if (isCounted(entity) && !entity.isDead()) {
+				count.byType[entity.getType().ordinal()]++;
+				count.total++;
+			}
+		}
+
+		WorldCount old = this.worldCounts.put(world.getUID(), count);
+		int oldTotal = (old == null) ? 0 : old.total;
+
+		this.total += count.total - oldTotal;
+		return count.total - oldTotal;
+	}
+
+	/**
+	 * Forgets the counts for a world which is being unloaded.
+	 * @param world The world to forget.
+	 */
+	public void removeWorld(World world) {
+
+		WorldCount old = this.worldCounts.remove(world.getUID());
+
+		if (old != null) {
+			this.total -= old.total;
+		}
+	}
+
+	/**
+	 * Returns the number of mobs in all worlds.
+	 * @return The number of mobs in all worlds.
+	 */
+	public int getTotal() {
+		return this.total;
+	}
+
+	/**
+	 * Returns the number of mobs in a world.
+	 * @param world The world to return a count for.
+	 * @return The number of mobs in the world.
+	 */
+	public int getCount(World world) {
+		WorldCount count = this.worldCounts.get(world.getUID());
+		return (count == null) ? 0 : count.total;
+	}
+
+	/**
+	 * Returns the number of mobs of a type in a world.
+	 * @param world The world to return a count for.
+	 * @param type The type of mob to return a count for.
+	 * @return The number of mobs of the type in the world.
+	 */
+	public int getCount(World world, EntityType type) {
+		WorldCount count = this.worldCounts.get(world.getUID());
+		return (count == null) ? 0 : count.byType[type.ordinal()];
+	}
+}
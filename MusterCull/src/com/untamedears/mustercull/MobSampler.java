@@ -0,0 +1,116 @@
+package com.untamedears.mustercull;
+
+import java.util.Random;
+
+/**
+ * Picks mobs at random from a MobSnapshot into a CullPlan.
+ */
+public final class MobSampler {
+
+	/**
+	 * This class only has static methods.
+	 */
+	private MobSampler() {
+	}
+
+	/**
+	 * Picks mobs uniformly at random with a partial Fisher-Yates shuffle.
+	 * @param candidates The mobs to pick from; reordered in place.
+	 * @param count The number of mobs to pick.
+	 * @param plan The plan to add the picked mobs to.
+	 * @param random The source of randomness.
+	 * @return The number of mobs picked.
+	 */
+	public static int sample(int[] candidates, int count, CullPlan plan, Random random) {
+
+		count = Math.min(count, candidates.length);
+
+		for (int i = 0; i < count; i++) {
+			int j = i + random.nextInt(candidates.length - i);
+			int mob = candidates[j];
+			candidates[j] = candidates[i];
+			candidates[i] = mob;
+
+			plan.add(mob);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Picks mobs at random, each in proportion to its weight, without
+	 * picking any mob twice.
+	 *
+	 * Each mob gets the key log(u) / weight for a uniform u, and the mobs
+	 * with the largest keys are kept in a heap as they are seen, which is
+	 * the Efraimidis-Spirakis method.
+	 * @param candidates The mobs to pick from.
+	 * @param weights The weight of each candidate, by position; must be positive.
+	 * @param count The number of mobs to pick.
+	 * @param plan The plan to add the picked mobs to.
+	 * @param random The source of randomness.
+	 * @return The number of mobs picked.
+	 */
+	public static int sampleWeighted(int[] candidates, double[] weights, int count, CullPlan plan, Random random) {
+
+		count = Math.min(count, candidates.length);
+
+		if (count <= 0) {
+			return 0;
+		}
+
+		// A min-heap of the best keys so far.
+		double[] heapKeys = new double[count];
+		int[] heapMobs = new int[count];
+		int heapSize = 0;
+
+		for (int i = 0; i < candidates.length; i++) {
+			double key = Math.log(1.0 - random.nextDouble()) / weights[i];
+
+			if (heapSize < count) {
+				int slot = heapSize++;
+
+				while (slot > 0 && heapKeys[(slot - 1) >> 1] > key) {
+					heapKeys[slot] = heapKeys[(slot - 1) >> 1];
+					heapMobs[slot] = heapMobs[(slot - 1) >> 1];
+					slot = (slot - 1) >> 1;
+				}
+
+				heapKeys[slot] = key;
+				heapMobs[slot] = candidates[i];
+			}
+			else if (key > heapKeys[0]) {
+				int slot = 0;
+
+				while (true) {
+					int child = slot * 2 + 1;
+
+					if (child >= heapSize) {
+						break;
+					}
+
+					if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+						child++;
+					}
+
+					if (heapKeys[child] >= key) {
+						break;
+					}
+
+					heapKeys[slot] = heapKeys[child];
+					heapMobs[slot] = heapMobs[child];
+					slot = child;
+				}
+
+				heapKeys[slot] = key;
+				heapMobs[slot] = candidates[i];
+			}
+		}
+
+		for (int i = 0; i < heapSize; i++) {
+			plan.add(heapMobs[i]);
+		}
+
+		return heapSize;
+	}
+}
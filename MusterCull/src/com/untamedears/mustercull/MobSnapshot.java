@@ -0,0 +1,366 @@
+package com.untamedears.mustercull;
+
+import org.bukkit.Location;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.LivingEntity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compact copy of the state of every mob, taken on the main thread.
+ *
+ * Mobs are numbered from zero and their state is held in parallel arrays,
+ * so cull plans can be worked out on another thread from the snapshot alone.
+ * Only the entity references need the main thread, and those are only used
+ * when a plan is applied.
+ */
+public class MobSnapshot {
+
+	/**
+	 * Every EntityType, indexed by ordinal.
+	 */
+	private static final EntityType[] TYPES = EntityType.values();
+
+	/**
+	 * The state of a world when the snapshot was taken.
+	 */
+	public static class WorldInfo {
+
+		/**
+		 * The name of the world.
+		 */
+		private final String name;
+
+		/**
+		 * The monster spawn limit of the world.
+		 */
+		private final int monsterSpawnLimit;
+
+		/**
+		 * The full time of the world in ticks.
+		 */
+		private final long fullTime;
+
+		/**
+		 * The number of loaded chunks which may spawn mobs near players.
+		 */
+		private final int spawnChunkCount;
+
+		/**
+		 * Constructor which sets the state of the world.
+		 * @param name The name of the world.
+		 * @param monsterSpawnLimit The monster spawn limit of the world.
+		 * @param fullTime The full time of the world in ticks.
+		 * @param spawnChunkCount The number of loaded chunks which may spawn mobs near players.
+		 */
+		private WorldInfo(String name, int monsterSpawnLimit, long fullTime, int spawnChunkCount) {
+			this.name = name;
+			this.monsterSpawnLimit = monsterSpawnLimit;
+			this.fullTime = fullTime;
+			this.spawnChunkCount = spawnChunkCount;
+		}
+
+		/**
+		 * Returns the name of the world.
+		 * @return The name of the world.
+		 */
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * Returns the monster spawn limit of the world.
+		 * @return The monster spawn limit of the world.
+		 */
+		public int getMonsterSpawnLimit() {
+			return this.monsterSpawnLimit;
+		}
+
+		/**
+		 * Returns the full time of the world in ticks.
+		 * @return The full time of the world in ticks.
+		 */
+		public long getFullTime() {
+			return this.fullTime;
+		}
+
+		/**
+		 * Returns the number of loaded chunks which may spawn mobs near players.
+		 * @return The number of loaded chunks which may spawn mobs near players.
+		 */
+		public int getSpawnChunkCount() {
+			return this.spawnChunkCount;
+		}
+	}
+
+	/**
+	 * The worlds in the snapshot, indexed by world number.
+	 */
+	private List<WorldInfo> worldInfo = new ArrayList<WorldInfo>();
+
+	/**
+	 * Number of mobs in the snapshot.
+	 */
+	private int size = 0;
+
+	/**
+	 * The mobs themselves. Only to be touched on the main thread.
+	 */
+	private LivingEntity[] entities;
+
+	/**
+	 * The world number of each mob.
+	 */
+	private int[] worlds;
+
+	/**
+	 * The block coordinates of each mob.
+	 */
+	private int[] blockX, blockY, blockZ;
+
+	/**
+	 * The EntityType ordinal of each mob.
+	 */
+	private int[] types;
+
+	/**
+	 * The cull priority of each mob; higher is culled first.
+	 */
+	private byte[] priorities;
+
+	/**
+	 * Whether each mob counts towards the hostile cull.
+	 */
+	private boolean[] hostile;
+
+	/**
+	 * The mob numbers of the mobs which count towards the hostile cull, in order.
+	 */
+	private int[] hostileMobs;
+
+	/**
+	 * Number of mobs which count towards the hostile cull.
+	 */
+	private int hostileCount = 0;
+
+	/**
+	 * Constructor which sizes the snapshot.
+	 * @param capacity The number of mobs expected.
+	 */
+	public MobSnapshot(int capacity) {
+		capacity = Math.max(16, capacity);
+
+		this.entities = new LivingEntity[capacity];
+		this.worlds = new int[capacity];
+		this.blockX = new int[capacity];
+		this.blockY = new int[capacity];
+		this.blockZ = new int[capacity];
+		this.types = new int[capacity];
+		this.priorities = new byte[capacity];
+		this.hostile = new boolean[capacity];
+		this.hostileMobs = new int[16];
+	}
+
+	/**
+	 * Adds a world to the snapshot.
+	 * @param name The name of the world.
+	 * @param monsterSpawnLimit The monster spawn limit of the world.
+	 * @param fullTime The full time of the world in ticks.
+	 * @param spawnChunkCount The number of loaded chunks which may spawn mobs near players.
+	 * @return The world number to add the world's mobs with.
+	 */
+	public int addWorld(String name, int monsterSpawnLimit, long fullTime, int spawnChunkCount) {
+		this.worldInfo.add(new WorldInfo(name, monsterSpawnLimit, fullTime, spawnChunkCount));
+		return this.worldInfo.size() - 1;
+	}
+
+	/**
+	 * Adds a mob to the snapshot.
+	 * @param entity The mob to add.
+	 * @param world The world number of the mob.
+	 * @param location The location of the mob.
+	 * @param priority The cull priority of the mob.
+	 * @param isHostile Whether the mob counts towards the hostile cull.
+	 */
+	public void add(LivingEntity entity, int world, Location location, int priority, boolean isHostile) {
+
+		if (this.size == this.entities.length) {
+			grow();
+		}
+
+		int i = this.size++;
+
+		this.entities[i] = entity;
+		this.worlds[i] = world;
+		this.blockX[i] = location.getBlockX();
+		this.blockY[i] = location.getBlockY();
+		this.blockZ[i] = location.getBlockZ();
+		this.types[i] = entity.getType().ordinal();
+		this.priorities[i] = (byte) priority;
+		this.hostile[i] = isHostile;
+
+		if (isHostile) {
+			if (this.hostileCount == this.hostileMobs.length) {
+				this.hostileMobs = Arrays.copyOf(this.hostileMobs, this.hostileCount * 2);
+			}
+
+			this.hostileMobs[this.hostileCount++] = i;
+		}
+	}
+
+	/**
+	 * Doubles the capacity of the snapshot.
+	 */
+	private void grow() {
+		int capacity = this.entities.length * 2;
+
+		this.entities = Arrays.copyOf(this.entities, capacity);
+		this.worlds = Arrays.copyOf(this.worlds, capacity);
+		this.blockX = Arrays.copyOf(this.blockX, capacity);
+		this.blockY = Arrays.copyOf(this.blockY, capacity);
+		this.blockZ = Arrays.copyOf(this.blockZ, capacity);
+		this.types = Arrays.copyOf(this.types, capacity);
+		this.priorities = Arrays.copyOf(this.priorities, capacity);
+		this.hostile = Arrays.copyOf(this.hostile, capacity);
+	}
+
+	/**
+	 * Returns the number of mobs in the snapshot.
+	 * @return The number of mobs in the snapshot.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the number of worlds in the snapshot.
+	 * @return The number of worlds in the snapshot.
+	 */
+	public int getWorldCount() {
+		return this.worldInfo.size();
+	}
+
+	/**
+	 * Returns the state of a world.
+	 * @param world The world number.
+	 * @return The state of the world when the snapshot was taken.
+	 */
+	public WorldInfo getWorldInfo(int world) {
+		return this.worldInfo.get(world);
+	}
+
+	/**
+	 * Returns the world number of a mob.
+	 * @param i The mob number.
+	 * @return The world number of the mob.
+	 */
+	public int getWorld(int i) {
+		return this.worlds[i];
+	}
+
+	/**
+	 * Returns the block x coordinate of a mob.
+	 * @param i The mob number.
+	 * @return The block x coordinate of the mob.
+	 */
+	public int getBlockX(int i) {
+		return this.blockX[i];
+	}
+
+	/**
+	 * Returns the block y coordinate of a mob.
+	 * @param i The mob number.
+	 * @return The block y coordinate of the mob.
+	 */
+	public int getBlockY(int i) {
+		return this.blockY[i];
+	}
+
+	/**
+	 * Returns the block z coordinate of a mob.
+	 * @param i The mob number.
+	 * @return The block z coordinate of the mob.
+	 */
+	public int getBlockZ(int i) {
+		return this.blockZ[i];
+	}
+
+	/**
+	 * Returns the chunk x coordinate of a mob.
+	 * @param i The mob number.
+	 * @return The chunk x coordinate of the mob.
+	 */
+	public int getChunkX(int i) {
+		return this.blockX[i] >> 4;
+	}
+
+	/**
+	 * Returns the chunk z coordinate of a mob.
+	 * @param i The mob number.
+	 * @return The chunk z coordinate of the mob.
+	 */
+	public int getChunkZ(int i) {
+		return this.blockZ[i] >> 4;
+	}
+
+	/**
+	 * Returns the type of a mob.
+	 * @param i The mob number.
+	 * @return The type of the mob.
+	 */
+	public EntityType getType(int i) {
+		return TYPES[this.types[i]];
+	}
+
+	/**
+	 * Returns the cull priority of a mob.
+	 * @param i The mob number.
+	 * @return The cull priority of the mob; higher is culled first.
+	 */
+	public int getPriority(int i) {
+		return this.priorities[i];
+	}
+
+	/**
+	 * Returns whether a mob counts towards the hostile cull.
+	 * @param i The mob number.
+	 * @return Whether the mob counts towards the hostile cull.
+	 */
+	public boolean isHostile(int i) {
+		return this.hostile[i];
+	}
+
+	/**
+	 * Returns the number of mobs which count towards the hostile cull.
+	 * @return The number of hostile mobs.
+	 */
+	public int getHostileCount() {
+		return this.hostileCount;
+	}
+
+	/**
+	 * Returns the mob number of a mob which counts towards the hostile cull.
+	 * @param n Which hostile mob, from 0 to getHostileCount() - 1.
+	 * @return The mob number of the hostile mob.
+	 */
+	public int getHostileMob(int n) {
+		return this.hostileMobs[n];
+	}
+
+	/**
+	 * Returns a mob if it is still alive and loaded, for use on the main thread.
+	 * @param i The mob number.
+	 * @return The mob, or null if it has died or gone since the snapshot.
+	 */
+	public LivingEntity revalidate(int i) {
+		LivingEntity entity = this.entities[i];
+
+		if (entity == null || entity.isDead() || !entity.isValid()) {
+			return null;
+		}
+
+		return entity;
+	}
+}
@@ -0,0 +1,184 @@
+package com.untamedears.mustercull;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Hands out one MobSnapshot per tick to everything which needs to look at
+ * every mob, so the worlds are only copied once however many ask.
+ *
+ * Snapshots are never changed once built, so one may be passed to another
+ * thread while the next tick builds a fresh one. The snapshot is let go once
+ * the hard cap pass or status request using it is done, as it holds every
+ * mob and so every world they are in. Must be called on the main thread.
+ */
+public class MobSnapshotService {
+
+	/**
+	 * Buffer for a reference to the main plug-in class.
+	 */
+	private MusterCull pluginInstance = null;
+
+	/**
+	 * The snapshot for snapshotTick, or null if none has been taken.
+	 */
+	private MobSnapshot snapshot = null;
+
+	/**
+	 * The tick the snapshot was taken on.
+	 */
+	private long snapshotTick = -1;
+
+	/**
+	 * Constructor which takes a reference to the main plug-in class.
+	 * @param pluginInstance A reference to the main plug-in class.
+	 */
+	public MobSnapshotService(MusterCull pluginInstance) {
+		this.pluginInstance = pluginInstance;
+	}
+
+	/**
+	 * Returns a snapshot of every non-player mob, taking one if none has
+	 * been taken this tick.
+	 * @return A snapshot of every non-player mob as of this tick.
+	 */
+	public MobSnapshot getSnapshot() {
+
+		long tick = this.pluginInstance.getCurrentTick();
+
+		if (this.snapshot == null || this.snapshotTick != tick) {
+			this.snapshot = takeSnapshot(this.pluginInstance.getServer().getWorlds());
+			this.snapshotTick = tick;
+		}
+
+		return this.snapshot;
+	}
+
+	/**
+	 * Returns a snapshot holding at least the mobs in some worlds. This
+	 * tick's snapshot of every world is returned if there is one; otherwise
+	 * only the given worlds are copied, and the copy is not kept.
+	 * @param worlds The worlds whose mobs are needed.
+	 * @return A snapshot holding at least the mobs in the given worlds.
+	 */
+	public MobSnapshot getSnapshot(Collection<World> worlds) {
+
+		if (this.snapshot != null && this.snapshotTick == this.pluginInstance.getCurrentTick()) {
+			return this.snapshot;
+		}
+
+		return takeSnapshot(worlds);
+	}
+
+	/**
+	 * Forgets the current snapshot, so the mobs it holds can be collected.
+	 */
+	public void clear() {
+		this.snapshot = null;
+		this.snapshotTick = -1;
+	}
+
+	/**
+	 * Counts the mobs in this tick's snapshot around each player.
+	 * @param range The horizontal distance from a player to count within.
+	 * @param height The vertical distance from a player to count within.
+	 * @return A StatusItem for each player.
+	 */
+	public List<StatusItem> getPlayerStats(int range, int height) {
+
+		MobSnapshot snapshot = getSnapshot();
+		List<StatusItem> stats = new ArrayList<StatusItem>();
+		ChunkBuckets chunks = new ChunkBuckets();
+		Location location = new Location(null, 0, 0, 0);
+
+		for (int worldNumber = 0; worldNumber < snapshot.getWorldCount(); worldNumber++) {
+			World world = this.pluginInstance.getServer().getWorld(snapshot.getWorldInfo(worldNumber).getName());
+
+			if (world == null || world.getPlayers().isEmpty()) {
+				continue;
+			}
+
+			chunks.clear();
+
+			for (int mob = 0; mob < snapshot.size(); mob++) {
+				if (snapshot.getWorld(mob) == worldNumber) {
+					chunks.add(snapshot.getChunkX(mob), snapshot.getChunkZ(mob), mob);
+				}
+			}
+
+			for (Player player : world.getPlayers()) {
+				player.getLocation(location);
+
+				int x = location.getBlockX();
+				int y = location.getBlockY();
+				int z = location.getBlockZ();
+				int count = 0;
+
+				for (int chunkX = (x - range) >> 4; chunkX <= (x + range) >> 4; chunkX++) {
+					for (int chunkZ = (z - range) >> 4; chunkZ <= (z + range) >> 4; chunkZ++) {
+						int bucket = chunks.find(chunkX, chunkZ);
+
+						if (bucket == -1) {
+							continue;
+						}
+
+						for (int entry = chunks.first(bucket); entry != -1; entry = chunks.next(entry)) {
+							int mob = chunks.getMob(entry);
+
+							if (Math.abs(snapshot.getBlockX(mob) - x) <= range
+									&& Math.abs(snapshot.getBlockY(mob) - y) <= height
+									&& Math.abs(snapshot.getBlockZ(mob) - z) <= range) {
+								count++;
+							}
+						}
+					}
+				}
+
+				stats.add(new StatusItem(player, count));
+			}
+		}
+
+		// Status is only asked for now and then, so the mobs are not held until the next time.
+		clear();
+		return stats;
+	}
+
+	/**
+	 * Copies the state of every non-player mob in some worlds.
+	 * @param worlds The worlds to copy.
+	 * @return A snapshot of every non-player mob in the worlds.
+	 */
+	private MobSnapshot takeSnapshot(Collection<World> worlds) {
+
+		Configuration config = this.pluginInstance.getConfiguration();
+		boolean hostileCull = config.monsterCullToSpawnEnabled();
+		MobSnapshot snapshot = new MobSnapshot(this.pluginInstance.getMobCount());
+		CullPriorityTable priorities = config.getCullPriorityTable();
+		HostileTable hostiles = config.getHostileTable();
+		Location location = new Location(null, 0, 0, 0);
+		PendingDeathLedger pendingDeaths = this.pluginInstance.getPendingDeaths();
+		long tick = this.pluginInstance.getCurrentTick();
+
+		for (World world : worlds) {
+			int spawnChunkCount = hostileCull ? this.pluginInstance.getSpawnChunks().getCount(world) : 0;
+			int worldNumber = snapshot.addWorld(world.getName(), world.getMonsterSpawnLimit(), world.getFullTime(), spawnChunkCount);
+
+			for (LivingEntity mob : world.getLivingEntities()) {
+				// Mobs already culled are left out so they are not culled twice.
+				if (mob instanceof Player || mob.isDead() || pendingDeaths.isPending(mob, tick)) {
+					continue;
+				}
+
+				snapshot.add(mob, worldNumber, mob.getLocation(location), priorities.priorityOf(mob), hostileCull && hostiles.isHostile(mob));
+			}
+		}
+
+		return snapshot;
+	}
+}
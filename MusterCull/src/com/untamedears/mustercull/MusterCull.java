@@ -1,6 +1,8 @@
 package com.untamedears.mustercull;
 
+import org.bukkit.Location;
 import org.bukkit.World;
+import org.bukkit.block.CreatureSpawner;
 import org.bukkit.entity.*;
 import org.bukkit.plugin.java.JavaPlugin;
 
@@ -32,6 +34,11 @@ public class MusterCull extends JavaPlugin {
 	 * Whether or not we are returning a new entity to process (concurrency protection) 
 	 */
 	private boolean returningKnownEntity = false;
+	
+	/**
+	 * Rebuild of knownEntities in progress, or null if none.
+	 */
+	private DamageQueueBuilder damageQueueBuilder = null;
 
 	/**
 	 * Buffer for keeping track of the parallel Laborer task for the DAMAGE method.
@@ -43,6 +50,26 @@ public class MusterCull extends JavaPlugin {
      */
     private int hardCapLaborTask = -1;
 
+    /**
+     * Buffer for keeping track of the parallel Laborer task for mob count reconciliation.
+     */
+    private int mobCountLaborTask = -1;
+
+    /**
+     * Buffer for keeping track of the parallel Laborer task for the spatial entity index.
+     */
+    private int entityIndexLaborTask = -1;
+
+    /**
+     * Buffer for keeping track of the task which counts server ticks.
+     */
+    private int tickClockTask = -1;
+
+    /**
+     * Buffer for keeping track of the parallel Laborer task for cancelled spawn summaries.
+     */
+    private int spawnCancelLaborTask = -1;
+
     /**
 	 * Buffer for holding configuration information for this plug-in.
 	 */
@@ -59,6 +86,112 @@ public class MusterCull extends JavaPlugin {
     private boolean hardCapPaused = false;
     
     private HardCapLaborer hardCapLaborerRef;
+    
+    /**
+     * Live counts of mobs per world and per type.
+     */
+    private MobCounter mobCounter = new MobCounter();
+    
+    /**
+     * Mobs filed by chunk column and type for neighborhood checks.
+     */
+    private EntityGridIndex entityIndex = new EntityGridIndex();
+    
+    /**
+     * Counts of loaded chunks near players in which mobs may spawn.
+     */
+    private SpawnChunkTracker spawnChunks = new SpawnChunkTracker(this);
+    
+    /**
+     * Ranges smaller than a chunk are checked with Bukkit directly, since
+     * Bukkit only looks at a few chunks for them anyway.
+     */
+    private static final int MIN_INDEXED_RANGE = 16;
+    
+    /**
+     * Counts server ticks for expiring cached state.
+     */
+    private TickClock tickClock = new TickClock();
+    
+    /**
+     * Recent SPAWN and SPAWNER rejections by chunk.
+     */
+    private SpawnVerdictCache verdictCache = new SpawnVerdictCache();
+    
+    /**
+     * Scratch location for reading where a mob died.
+     */
+    private Location deathLocation = new Location(null, 0, 0, 0);
+    
+    /**
+     * Counts of cancelled spawns since the last summary.
+     */
+    private SpawnCancelTally spawnCancelTally = new SpawnCancelTally();
+    
+    /**
+     * Mob spawner blocks seen firing, with their rate limits.
+     */
+    private SpawnerRegistry spawnerRegistry = new SpawnerRegistry();
+    
+    /**
+     * Average spawn and death rates per world and spawn reason.
+     */
+    private SpawnRateTracker spawnRateTracker = new SpawnRateTracker();
+    
+    /**
+     * Mobs the hard cap has culled whose deaths have not been seen yet.
+     */
+    private PendingDeathLedger pendingDeaths = new PendingDeathLedger();
+    
+    /**
+     * Source of randomness for admitting spawns near the hard cap.
+     */
+    private Random admissionRandom = new Random();
+    
+    /**
+     * The tick serverGrowthRate was worked out on, or -1 if never.
+     */
+    private long serverGrowthTick = -1;
+    
+    /**
+     * Average spawns less deaths per tick across all worlds, as of serverGrowthTick.
+     */
+    private double serverGrowthRate = 0;
+    
+    /**
+     * Whether the hard cap was exceeded and has not yet been culled back down.
+     */
+    private boolean hardCapCulling = false;
+    
+    /**
+     * Whether spawns are stopped until the mob count falls back to the resume level.
+     */
+    private boolean spawnGateClosed = false;
+    
+    /**
+     * The tick gateLimit was worked out on, or -1 if never.
+     */
+    private long gateLimitTick = -1;
+    
+    /**
+     * The hard mob limit as of gateLimitTick.
+     */
+    private int gateLimit = 0;
+    
+    /**
+     * The tick worldCapLimits were worked out on, or -1 if never.
+     */
+    private long worldCapLimitTick = -1;
+    
+    /**
+     * The limit of each world with its own cap as of worldCapLimitTick, by world UID.
+     */
+    private Map<UUID, Integer> worldCapLimits = new HashMap<UUID, Integer>();
+    
+    /**
+     * Shared per-tick snapshots of every mob.
+     */
+    private MobSnapshotService mobSnapshotService = new MobSnapshotService(this);
 	
 	/**
 	 * Called when the plug-in is enabled by Bukkit.
@@ -67,8 +200,41 @@ public class MusterCull extends JavaPlugin {
 		
 		this.config = new Configuration(this);
 		this.config.load();
+		this.spawnRateTracker.setHalfLife(this.config.getSpawnRateHalfLifeTicks());
+		this.pendingDeaths.setExpiryTicks(this.config.getHardCapPendingDeathTicks());
+		
+		this.tickClockTask = getServer().getScheduler().scheduleSyncRepeatingTask(this, this.tickClock, 1L, 1L);
+		
+		if (this.tickClockTask == -1) {
+			getLogger().severe("Failed to start MusterCull tick clock.");
+		}
+		
+		for (World world : getServer().getWorlds()) {
+			this.mobCounter.reconcile(world);
+			this.entityIndex.rebuild(world);
+		}
+		
+		this.spawnChunks.addOnlinePlayers();
+		
+		this.mobCountLaborTask = getServer().getScheduler().scheduleSyncRepeatingTask(this, new MobCountLaborer(this), this.config.getTicksBetweenMobCount(), this.config.getTicksBetweenMobCount());
+		
+		if (this.mobCountLaborTask == -1) {
+			getLogger().severe("Failed to start MusterCull mob count laborer.");
+		}
+		
+		this.entityIndexLaborTask = getServer().getScheduler().scheduleSyncRepeatingTask(this, new EntityIndexLaborer(this), this.config.getTicksBetweenIndexRebuild(), this.config.getTicksBetweenIndexRebuild());
+		
+		if (this.entityIndexLaborTask == -1) {
+			getLogger().severe("Failed to start MusterCull entity index laborer.");
+		}
+		
+		this.spawnCancelLaborTask = getServer().getScheduler().scheduleSyncRepeatingTask(this, new SpawnCancelLaborer(this), this.config.getTicksBetweenSpawnCancelSummary(), this.config.getTicksBetweenSpawnCancelSummary());
+		
+		if (this.spawnCancelLaborTask == -1) {
+			getLogger().severe("Failed to start MusterCull spawn summary laborer.");
+		}
         
-		this.damageLaborTask = getServer().getScheduler().scheduleSyncRepeatingTask(this, new DamageLaborer(this), this.config.getTicksBetweenDamage(), this.config.getTicksBetweenDamage());
+		this.damageLaborTask = getServer().getScheduler().scheduleSyncRepeatingTask(this, new DamageLaborer(this), 1L, 1L);
 
 		if (this.damageLaborTask == -1) {
 			getLogger().severe("Failed to start MusterCull DAMAGE laborer.");
@@ -83,6 +249,8 @@ public class MusterCull extends JavaPlugin {
         }
 
         getServer().getPluginManager().registerEvents(new EntityListener(this), this);
+        getServer().getPluginManager().registerEvents(new WorldListener(this), this);
+        getServer().getPluginManager().registerEvents(new PlayerListener(this), this);
 		Commander commander = new Commander(this);
 		
 		for (String command : getDescription().getCommands().keySet()) {
@@ -99,6 +267,16 @@ public class MusterCull extends JavaPlugin {
 	{
 		config.setHardCapCullingStrategy(strategy);
 	}
+	
+	/**
+	 * Sets the hard cap culling strategy for one world.
+	 * @param strategy The strategy, or DEFAULT for the strategy for all worlds.
+	 * @param world The name of the world, or null for all worlds without their own.
+	 */
+	public void setHardCapCullingStrategy(String strategy, String world)
+	{
+		config.setHardCapCullingStrategy(strategy, world);
+	}
      
 	/**
 	 * Called when the plug-in is disabled by Bukkit.
@@ -113,6 +291,24 @@ public class MusterCull extends JavaPlugin {
             hardCapLaborerRef = null;
         }
 
+        if (this.mobCountLaborTask != -1) {
+            getServer().getScheduler().cancelTask(this.mobCountLaborTask);
+        }
+
+        if (this.entityIndexLaborTask != -1) {
+            getServer().getScheduler().cancelTask(this.entityIndexLaborTask);
+        }
+
+        if (this.tickClockTask != -1) {
+            getServer().getScheduler().cancelTask(this.tickClockTask);
+        }
+
+        if (this.spawnCancelLaborTask != -1) {
+            getServer().getScheduler().cancelTask(this.spawnCancelLaborTask);
+        }
+
+        this.mobSnapshotService.clear();
+
     	this.config.save();
     }
     
@@ -126,20 +322,7 @@ public class MusterCull extends JavaPlugin {
      * @return The ConfigurationLimit for the entityType, or null if none is defined.
      */
     public ConfigurationLimit getLimit(EntityType entityType, CullType cullType) {
-    	
-    	List<ConfigurationLimit> limits = this.config.getLimits(entityType);
-    	
-    	if (limits == null) {
-    		return null;
-    	}
-    	
-    	for (ConfigurationLimit limit : limits) {
-    		if (cullType == limit.getCulling()) {
-    			return limit;
-    		}
-    	}
-    	
-    	return null;
+    	return this.config.getLimit(entityType, cullType);
     }
 
 	/**
@@ -151,6 +334,7 @@ public class MusterCull extends JavaPlugin {
 	 */
 	public void setLimit(EntityType type, ConfigurationLimit limit) {
 		this.config.setLimit(type, limit);
+		this.verdictCache.clear();
 	}
 	
 	/**
@@ -210,6 +394,121 @@ public class MusterCull extends JavaPlugin {
 	 * @return how much current mob count is over mob limit.
 	 */
 	public int overHardMobLimit() {
+		return getMobCount() - getHardMobLimit();
+	}
+	
+	/**
+	 * Returns how many mobs the hard cap should cull. Nothing is culled until
+	 * the mob count goes over the hard mob limit; then it is culled down to
+	 * hard_cap_cull_to_percent of the limit.
+	 * @return the number of mobs to cull, or 0 if none.
+	 */
+	public int getHardCapCullCount() {
+		
+		int count = getMobCount();
+		int limit = getHardMobLimit();
+		int cullTo = (int) ((long) limit * this.config.getHardCapCullToPercent() / 100);
+		
+		if (count > limit) {
+			this.hardCapCulling = true;
+		}
+		else if (count <= cullTo) {
+			this.hardCapCulling = false;
+		}
+		
+		return this.hardCapCulling ? count - cullTo : 0;
+	}
+	
+	/**
+	 * Returns how many mobs the hard cap should cull from a world over its
+	 * own cap, down to hard_cap_cull_to_percent of that cap.
+	 * @param world The world to check.
+	 * @return the number of mobs to cull from the world, or 0 if none.
+	 */
+	public int getWorldCullCount(World world) {
+		
+		if (overHardMobLimit(world) <= 0) {
+			return 0;
+		}
+		
+		WorldMobCap cap = this.config.getWorldMobCap(world.getName());
+		int cullTo = (int) ((long) cap.getLimit(world.getPlayers().size()) * this.config.getHardCapCullToPercent() / 100);
+		
+		return getMobCount(world) - cullTo;
+	}
+	
+	/**
+	 * Returns whether spawns are stopped by the hard cap. Spawns stop when
+	 * the mob count reaches the hard mob limit and resume once it falls to
+	 * hard_cap_resume_spawn_percent of the limit; in between, the last
+	 * answer stands. The limit is only worked out once a tick.
+	 * @return Whether spawns are stopped.
+	 */
+	public boolean isSpawnGateClosed() {
+		
+		int gateLimit = getGateLimit();
+		int count = getMobCount();
+		
+		if (this.spawnGateClosed) {
+			if (count <= (long) gateLimit * this.config.getHardCapResumeSpawnPercent() / 100) {
+				this.spawnGateClosed = false;
+			}
+		}
+		else if (count >= gateLimit) {
+			this.spawnGateClosed = true;
+		}
+		
+		return this.spawnGateClosed;
+	}
+	
+	/**
+	 * Returns the hard mob limit, worked out only once a tick for the
+	 * checks made on every spawn.
+	 * @return the hard mob limit as of this tick.
+	 */
+	private int getGateLimit() {
+		
+		long tick = getCurrentTick();
+		
+		if (this.gateLimitTick != tick) {
+			this.gateLimit = getHardMobLimit();
+			this.gateLimitTick = tick;
+		}
+		
+		return this.gateLimit;
+	}
+	
+	/**
+	 * Returns the limit of a world with its own cap, worked out only once a
+	 * tick for the checks made on every spawn.
+	 * @param world The world to check.
+	 * @param cap The world's own cap.
+	 * @return the number of mobs the world allows as of this tick.
+	 */
+	private int getWorldCapLimit(World world, WorldMobCap cap) {
+		
+		long tick = getCurrentTick();
+		
+		if (this.worldCapLimitTick != tick) {
+			this.worldCapLimits.clear();
+			this.worldCapLimitTick = tick;
+		}
+		
+		Integer limit = this.worldCapLimits.get(world.getUID());
+		
+		if (limit == null) {
+			limit = cap.getLimit(world.getPlayers().size());
+			this.worldCapLimits.put(world.getUID(), limit);
+		}
+		
+		return limit;
+	}
+	
+	/**
+	 * Returns the hard mob limit with the players now online.
+	 * @return the hard mob limit, never less than zero.
+	 */
+	public int getHardMobLimit() {
 
         int playerCount = getServer().getOnlinePlayers().length;
 		int hardLimit = getMaxMob();
@@ -220,59 +519,201 @@ public class MusterCull extends JavaPlugin {
 			currentLimit = 0;
 		}
 		
-		int totalMobs = getMobCount() - playerCount;
+		return currentLimit;
+	}
+	
+	/**
+	 * Decides at random whether to let a mob spawn, less likely the nearer
+	 * the projected mob count is to the hard mob limit or the world's own cap.
+	 * @param world The world the mob is spawning in.
+	 * @return Whether to let the mob spawn.
+	 */
+	public boolean admitSpawn(World world) {
+		
+		int startPercent = this.config.getSpawnAdmissionStartPercent();
+		
+		if (startPercent >= 100) {
+			return true;
+		}
+		
+		long tick = getCurrentTick();
+		long horizon = this.config.getSpawnAdmissionHorizonTicks();
+		
+		// Growth across all worlds is only summed once a tick.
+		if (this.serverGrowthTick != tick) {
+			this.serverGrowthRate = 0;
+			
+			for (World other : getServer().getWorlds()) {
+				this.serverGrowthRate += this.spawnRateTracker.getNetRate(other, tick);
+			}
+			
+			this.serverGrowthTick = tick;
+		}
+		
+		double chance = admissionChance(getMobCount() + this.serverGrowthRate * horizon, getGateLimit(), startPercent);
+		WorldMobCap cap = this.config.getWorldMobCap(world.getName());
+		
+		if (cap != null) {
+			double projected = getMobCount(world) + this.spawnRateTracker.getNetRate(world, tick) * horizon;
+			chance = Math.min(chance, admissionChance(projected, getWorldCapLimit(world, cap), startPercent));
+		}
+		
+		return chance >= 1.0 || this.admissionRandom.nextDouble() < chance;
+	}
+	
+	/**
+	 * Returns the chance of admitting a spawn with a projected mob count.
+	 * @param projected The projected number of mobs.
+	 * @param limit The number of mobs allowed.
+	 * @param startPercent The percent of the limit to start refusing spawns at.
+	 * @return The chance of admitting the spawn, from 0 to 1.
+	 */
+	private static double admissionChance(double projected, int limit, int startPercent) {
+		
+		double start = limit * startPercent / 100.0;
+		
+		if (projected <= start) {
+			return 1.0;
+		}
+		
+		if (projected >= limit) {
+			return 0.0;
+		}
 		
-		return totalMobs - currentLimit;
+		return (limit - projected) / (limit - start);
 	}
 	
 	/**
-	 * Returns list of all living non player entities in all worlds.
-	 * @return list of all living non player entities in all worlds.
+	 * Returns how much the mob count in a world is over its own limit.
+	 * @param world The world to check.
+	 * @return how much the mob count in the world is over its own limit, or 0 if it has none.
 	 */
-	public List<LivingEntity> getAllLivingNonPlayerMobs() {
+	public int overHardMobLimit(World world) {
+		
+		WorldMobCap cap = this.config.getWorldMobCap(world.getName());
+		
+		if (cap == null) {
+			return 0;
+		}
+		
+		return getMobCount(world) - cap.getLimit(world.getPlayers().size());
+	}
+	
+    /**
+     * Returns number of living non player entities in all worlds, less
+     * those already culled whose deaths are awaited.
+     * @return number of living non player entities in all worlds.
+     */
+    public int getMobCount() {
+        return this.mobCounter.getTotal() - this.pendingDeaths.getTotal(getCurrentTick());
+    }
 
-        List<World> worlds = getServer().getWorlds();
-        int mobCount = 0;
+    /**
+     * Returns number of living non player entities in a world, less those
+     * already culled whose deaths are awaited.
+     * @param world The world to count.
+     * @return number of living non player entities in the world.
+     */
+    public int getMobCount(World world) {
+        return this.mobCounter.getCount(world) - this.pendingDeaths.getCount(world, getCurrentTick());
+    }
 
-		for (World world : worlds) {
-            mobCount += world.getLivingEntities().size();
-		}
+    /**
+     * Returns the mobs the hard cap has culled whose deaths have not been seen yet.
+     * @return the pending death ledger.
+     */
+    public PendingDeathLedger getPendingDeaths() {
+        return this.pendingDeaths;
+    }
 
-        List<LivingEntity> entities = new ArrayList<LivingEntity>(mobCount);
+    /**
+     * Returns the service handing out one snapshot of every mob per tick.
+     * @return the mob snapshot service.
+     */
+    public MobSnapshotService getMobSnapshotService() {
+        return this.mobSnapshotService;
+    }
 
-        for (World world : worlds) {
-        	List<LivingEntity> mobs = world.getLivingEntities();
-            for (LivingEntity mob : mobs) {
-                if (   (! (mob instanceof Player))
-                    && (! mob.isDead())) {
-                    entities.add(mob);
-                }
-            }
-        }
+    /**
+     * Returns the live mob counts maintained from entity and chunk events.
+     * @return the live mob counts.
+     */
+    public MobCounter getMobCounter() {
+        return this.mobCounter;
+    }
 
-        return entities;
-	}
+    /**
+     * Returns the index of mobs by chunk column and type.
+     * @return the spatial entity index.
+     */
+    public EntityGridIndex getEntityIndex() {
+        return this.entityIndex;
+    }
 
     /**
-     * Returns number of living entities in all worlds.
-     * @return number of living entities in all worlds.
+     * Returns the counts of loaded chunks near players in which mobs may spawn.
+     * @return the spawn chunk tracker.
      */
-    public int getMobCount() {
+    public SpawnChunkTracker getSpawnChunks() {
+        return this.spawnChunks;
+    }
 
-        int count = 0;
+    /**
+     * Returns the cache of recent SPAWN and SPAWNER rejections.
+     * @return the spawn verdict cache.
+     */
+    public SpawnVerdictCache getVerdictCache() {
+        return this.verdictCache;
+    }
 
-        for (World world : getServer().getWorlds()) {
-            count += world.getLivingEntities().size();
-        }
+    /**
+     * Returns the counts of cancelled spawns since the last summary.
+     * @return the cancelled spawn counts.
+     */
+    public SpawnCancelTally getSpawnCancelTally() {
+        return this.spawnCancelTally;
+    }
 
-        return count;
+    /**
+     * Returns the average spawn and death rates per world and spawn reason.
+     * @return the spawn rate tracker.
+     */
+    public SpawnRateTracker getSpawnRateTracker() {
+        return this.spawnRateTracker;
+    }
+
+    /**
+     * Returns the registry of mob spawner blocks seen firing.
+     * @return the spawner registry.
+     */
+    public SpawnerRegistry getSpawnerRegistry() {
+        return this.spawnerRegistry;
+    }
+
+    /**
+     * Returns the spawner blocks which have produced the most mobs recently.
+     * @param count The number of spawners to return.
+     * @return Up to count spawners, busiest first.
+     */
+    public List<SpawnerRegistry.Spawner> getHottestSpawners(int count) {
+        return this.spawnerRegistry.getHottest(count, this.config.getSpawnerOutputWindow(), getCurrentTick());
+    }
+
+    /**
+     * Returns the number of server ticks since the plug-in was enabled.
+     * @return the current tick.
+     */
+    public long getCurrentTick() {
+        return this.tickClock.getTick();
     }
 	
 	/**
-	 * Returns the next entity for monitoring.
-	 * @return A reference to an EntityLimitPair.
+	 * Returns the next entity for monitoring, rebuilding the list a slice at
+	 * a time when it runs out.
+	 * @param deadline The System.nanoTime() value to stop rebuilding at.
+	 * @return A reference to an EntityLimitPair, or null if there is none yet.
 	 */
-	public EntityLimitPair getNextEntity() {
+	public EntityLimitPair getNextEntity(long deadline) {
 		
 		synchronized(this.knownEntities) {
 			if (this.returningKnownEntity) {
@@ -291,66 +732,28 @@ public class MusterCull extends JavaPlugin {
 			this.clearKnownEntities = false;
 		}
 		
-		if (this.knownEntitiesRemaining <= 0 || clearEntities) {
-			
-			if (clearEntities) {
-				getLogger().info("Forcing entity list to clear...");
-			}
-			
+		if (clearEntities) {
+			getLogger().info("Forcing entity list to clear...");
 			this.knownEntitiesRemaining = 0;
 			this.knownEntities.clear();
+			this.damageQueueBuilder = null;
+		}
+		
+		if (this.knownEntitiesRemaining <= 0) {
 			
-			Map<EntityType, List<Entity>> sortedEntities = new HashMap<EntityType, List<Entity>>();
-			int totalEntities = 0;
-			
-			for (World world : getServer().getWorlds()) {
-				
-				List<Entity> entities = world.getEntities();
-				totalEntities += entities.size();
-				
-				for (Entity entity : entities) {
-					List<Entity> knownEntities = sortedEntities.get(entity.getType());
-					
-					if (knownEntities == null) {
-						knownEntities = new ArrayList<Entity>();
-						sortedEntities.put(entity.getType(), knownEntities);
-					}
-					
-					knownEntities.add(entity);
-				}
-			}
-			
-			if (totalEntities < this.config.getMobLimit()) {
-				synchronized(this.knownEntities) {
-					this.returningKnownEntity = false;
-					return null;
-				}
+			if (this.damageQueueBuilder == null) {
+				this.knownEntities.clear();
+				this.damageQueueBuilder = new DamageQueueBuilder(this);
 			}
 			
-			float mobLimitPercent = ((float)this.config.getMobLimitPercent()) / 100.0f;
-			
-			Stack<EntityLimitPair> newEntities = new Stack<EntityLimitPair>();
-			
-			for (Map.Entry<EntityType, List<Entity>> entries : sortedEntities.entrySet()) {
-				ConfigurationLimit limit = this.getLimit(entries.getKey(), CullType.DAMAGE);
-				
-				if (limit == null) {
-					continue;
-				}
-				
-				List<Entity> values = entries.getValue();
-				
-				if (((float)values.size()) / ((float)totalEntities) >= mobLimitPercent) {
-					for (Entity entity : entries.getValue()) {
-						newEntities.push(new EntityLimitPair(entity, limit));
-					}
-				}
+			if (this.damageQueueBuilder.step(deadline)) {
+				this.knownEntities = this.damageQueueBuilder.build();
+				this.knownEntitiesRemaining = this.knownEntities.size();
+				this.damageQueueBuilder = null;
 			}
-			
-			this.knownEntities = newEntities;
-			this.knownEntitiesRemaining = this.knownEntities.size();
 		}
-		else {
+		
+		if (this.knownEntitiesRemaining > 0) {
 			entityLimitPair = this.knownEntities.pop();
 			this.knownEntitiesRemaining--;
 		}
@@ -361,19 +764,31 @@ public class MusterCull extends JavaPlugin {
 		}
 	}
 	
+	/**
+	 * Returns whether the list of entities for monitoring is part way through a rebuild.
+	 * @return Whether a rebuild of the list is in progress.
+	 */
+	public boolean isBuildingDamageEntities() {
+		return this.damageQueueBuilder != null;
+	}
+	
+	/**
+	 * Horizontal distance from a player to count mobs within for status checks.
+	 */
+	private static final int STATUS_RANGE = 48;
+	
+	/**
+	 * Vertical distance from a player to count mobs within for status checks.
+	 */
+	private static final int STATUS_HEIGHT = 256;
+	
 	/**
 	 * Returns information about mobs surrounding players
 	 * @return Information about mobs surrounding players
 	 */
 	public List<StatusItem> getStats() {
 		
-		List<StatusItem> stats = new ArrayList<StatusItem>();
-		
-		for (World world : getServer().getWorlds()) {
-			for (Player player : world.getPlayers()) {
-				stats.add(new StatusItem(player));
-			}
-		}
+		List<StatusItem> stats = this.mobSnapshotService.getPlayerStats(STATUS_RANGE, STATUS_HEIGHT);
 		
 		Collections.sort(stats, new StatusItemComparator());
 		Collections.reverse(stats);
@@ -496,6 +911,44 @@ public class MusterCull extends JavaPlugin {
 		return count;
 	}
 	
+	/**
+	 * Gets rid of a mob chosen by the hard cap.
+	 * @param entity The mob to cull.
+	 * @param action How to cull the mob.
+	 */
+	public void cullEntity(LivingEntity entity, CullAction action) {
+		
+		// Stop counting the mob now; its death event takes it back off.
+		// Mobs killed without drops are marked by id, as the death event
+		// may come on a later tick.
+		this.pendingDeaths.add(entity, getCurrentTick(), action == CullAction.KILL_NO_DROPS);
+		
+		switch (action) {
+		case KILL_NO_DROPS:
+			// Enough to get through armour; setHealth(0) would skip the death
+			// event for mobs, leaving their drops and counts behind.
+			double damage = Math.max(entity.getHealth(), entity.getMaxHealth()) * 10;
+			NotifyDamaged(entity, (int) Math.ceil(damage));
+			entity.damage(damage);
+			break;
+		case REMOVE:
+			NotifyDamaged(entity, (int) Math.ceil(entity.getHealth()));
+			
+			// Removal skips the death event, so uncount the mob here.
+			if (MobCounter.isCounted(entity)) {
+				this.spawnRateTracker.recordDeath(entity.getWorld(), getCurrentTick());
+			}
+			this.mobCounter.remove(entity);
+			this.pendingDeaths.remove(entity);
+			this.entityIndex.remove(entity);
+			invalidateSpawnVerdicts(entity);
+			entity.remove();
+			break;
+		default:
+			damageEntity(entity, 100);
+		}
+	}
+	
 	/**
 	 * Causes a specified amount of damage to an entity, doubled for baby animals.
 	 * @param entity The bukkit entity to cause damage to
@@ -549,28 +1002,121 @@ public class MusterCull extends JavaPlugin {
 			return false;
 		}
 		
+		Location location = entity.getLocation();
+		
 		// If the limit is 0, prevent all of this entity type from spawning 
 		if (limit.getLimit() <= 0) {
-			getLogger().info("Cancelling spawn for " + entity.toString() + " at " + entity.getLocation().toString() + " (method: " + limit.getCulling().toString() + ")");
-			return true;
+			return cancelSpawn(entity, limit, location);
+		}
+		
+		int chunkX = location.getBlockX() >> 4;
+		int chunkZ = location.getBlockZ() >> 4;
+		long ttl = this.config.getSpawnVerdictTicks();
+		
+		// Only areas counted by the index are alike enough across a chunk to share a verdict.
+		boolean cacheable = ttl > 0 && limit.getRange() >= MIN_INDEXED_RANGE;
+		
+		if (cacheable && this.verdictCache.isRejected(entity.getWorld(), chunkX, chunkZ, entity.getType(), limit.getCulling(), getCurrentTick())) {
+			return cancelSpawn(entity, limit, location);
 		}
 		
-		// Loop through entities in range and count similar entities.
+		// If we've reached a limit for this entity, prevent it from spawning.
+		if (countSimilarNearby(entity, limit.getRange(), limit.getLimit()) >= limit.getLimit()) {
+			
+			if (cacheable) {
+				this.verdictCache.reject(entity.getWorld(), chunkX, chunkZ, entity.getType(), limit.getCulling(), getCurrentTick(), ttl);
+			}
+			
+			return cancelSpawn(entity, limit, location);
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Performs SPAWNER culling checks for a mob coming out of a spawner block.
+	 * @param entity The bukkit entity being spawned.
+	 * @param spawner The spawner block producing the entity.
+	 * @param limit The SPAWNER limit for this entity.
+	 * @return Whether the spawn should be cancelled.
+	 */
+	public boolean runSpawnerChecks(Entity entity, CreatureSpawner spawner, ConfigurationLimit limit) {
+		
+		if (limit == null) {
+			return false;
+		}
+		
+		long ticksPerSpawn = this.config.getSpawnerTicksPerSpawn();
+		
+		// Without a rate limit, count the mobs around the spawner instead.
+		if (ticksPerSpawn <= 0) {
+			return runEntityChecks(entity, limit);
+		}
+		
+		// The spawner is only charged once the spawn has gone through, in onCreatureSpawned.
+		if (!this.spawnerRegistry.canSpawn(spawner.getWorld(), spawner.getX(), spawner.getY(), spawner.getZ(), entity, limit, ticksPerSpawn, this.config.getSpawnerOutputWindow(), getCurrentTick())) {
+			return cancelSpawn(entity, limit, entity.getLocation());
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Counts a cancelled spawn for the next summary, logging it in debug mode.
+	 * @param entity The bukkit entity whose spawn is cancelled.
+	 * @param limit The limit which cancelled the spawn.
+	 * @param location The location of the spawn.
+	 * @return Always true, for returning straight from runEntityChecks.
+	 */
+	private boolean cancelSpawn(Entity entity, ConfigurationLimit limit, Location location) {
+		
+		this.spawnCancelTally.record(entity.getWorld(), entity.getType(), limit.getCulling(), location.getBlockX() >> 4, location.getBlockZ() >> 4, this.config.getSpawnCancelSummaryChunks() > 0);
+		
+		if (this.config.getSpawnCancelDebug()) {
+			getLogger().info("Cancelling spawn for " + entity.toString() + " at " + location.toString() + " (method: " + limit.getCulling().toString() + ")");
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Forgets recent spawn rejections an entity leaving the world may have freed up.
+	 * @param entity The bukkit entity which died or was removed.
+	 */
+	public void invalidateSpawnVerdicts(Entity entity) {
+		
+		int range = this.config.getSpawnRange(entity.getType());
+		
+		if (range < MIN_INDEXED_RANGE) {
+			return;
+		}
+		
+		entity.getLocation(this.deathLocation);
+		this.verdictCache.invalidate(entity.getWorld(), this.deathLocation.getBlockX() >> 4, this.deathLocation.getBlockZ() >> 4, entity.getType(), (range >> 4) + 1);
+	}
+	
+	/**
+	 * Returns the number of other entities of the same type around an entity.
+	 * @param entity The bukkit entity to count around.
+	 * @param range The bounding box range to count within.
+	 * @param stopAt Stop counting once this many have been found.
+	 * @return The number of similar entities found, up to roughly stopAt.
+	 */
+	public int countSimilarNearby(Entity entity, int range, int stopAt) {
+		
 		int count = 0;
 		
-		for (Entity otherEntity : entity.getNearbyEntities(limit.getRange(), limit.getRange(), limit.getRange())) {
-			if (0 == otherEntity.getType().compareTo(entity.getType())) {
-				count += 1;
-				
-				// If we've reached a limit for this entity, prevent it from spawning.
-				if (count >= limit.getLimit()) {
-					getLogger().info("Cancelling spawn for " + entity.toString() + " at " + entity.getLocation().toString() + " (method: " + limit.getCulling().toString() + ")");
-					return true;
+		if (range < MIN_INDEXED_RANGE) {
+			for (Entity otherEntity : entity.getNearbyEntities(range, range, range)) {
+				if (otherEntity.getType() == entity.getType() && ++count >= stopAt) {
+					break;
 				}
 			}
+			
+			return count;
 		}
 		
-		return false;
+		return this.entityIndex.count(entity.getWorld(), entity.getType(), entity.getLocation(), range, stopAt, entity);
 	}
 
 	/**
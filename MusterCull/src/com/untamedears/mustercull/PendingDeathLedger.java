@@ -0,0 +1,228 @@
+package com.untamedears.mustercull;
+
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Remembers mobs the hard cap has culled whose deaths have not been seen yet.
+ *
+ * A culled mob stays in the mob counts until its death event arrives, which
+ * may be later than the cull or never if the damage was cancelled. Until
+ * then the hard cap would count it again and cull extra mobs to make up for
+ * it. Mobs stay pending until they die or until a set number of ticks pass,
+ * after which they are counted again in case they survived.
+ */
+public class PendingDeathLedger {
+
+	/**
+	 * A single culled mob.
+	 */
+	private static class Pending {
+
+		/**
+		 * The entity id of the mob.
+		 */
+		private final int entityId;
+
+		/**
+		 * The UID of the world the mob was in.
+		 */
+		private final UUID world;
+
+		/**
+		 * The tick the mob was culled on.
+		 */
+		private final long tick;
+
+		/**
+		 * Whether the mob is to die without drops or experience.
+		 */
+		private boolean dropsSuppressed;
+
+		/**
+		 * Constructor which records a cull.
+		 * @param entityId The entity id of the mob.
+		 * @param world The UID of the world the mob was in.
+		 * @param tick The tick the mob was culled on.
+		 * @param dropsSuppressed Whether the mob is to die without drops or experience.
+		 */
+		private Pending(int entityId, UUID world, long tick, boolean dropsSuppressed) {
+			this.entityId = entityId;
+			this.world = world;
+			this.tick = tick;
+			this.dropsSuppressed = dropsSuppressed;
+		}
+	}
+
+	/**
+	 * Pending mobs by entity id.
+	 */
+	private LongHashMap<Pending> pending = new LongHashMap<Pending>();
+
+	/**
+	 * Pending mobs in the order they were culled, for expiry. May hold
+	 * entries already gone from pending.
+	 */
+	private ArrayDeque<Pending> byAge = new ArrayDeque<Pending>();
+
+	/**
+	 * Number of pending mobs in each world, keyed by world UID.
+	 */
+	private Map<UUID, int[]> worldCounts = new HashMap<UUID, int[]>();
+
+	/**
+	 * Number of ticks a mob stays pending without its death being seen.
+	 */
+	private long expiryTicks = 100;
+
+	/**
+	 * Sets how long a mob stays pending without its death being seen.
+	 * @param expiryTicks The number of ticks a mob stays pending.
+	 */
+	public void setExpiryTicks(long expiryTicks) {
+		this.expiryTicks = Math.max(expiryTicks, 1);
+	}
+
+	/**
+	 * Records a mob which is being culled.
+	 * @param entity The mob being culled.
+	 * @param tick The current tick.
+	 * @param dropsSuppressed Whether the mob is to die without drops or experience.
+	 */
+	public void add(Entity entity, long tick, boolean dropsSuppressed) {
+
+		Pending existing = this.pending.get(entity.getEntityId());
+
+		if (existing != null) {
+			existing.dropsSuppressed |= dropsSuppressed;
+			return;
+		}
+
+		Pending entry = new Pending(entity.getEntityId(), entity.getWorld().getUID(), tick, dropsSuppressed);
+		this.pending.put(entry.entityId, entry);
+		this.byAge.addLast(entry);
+
+		int[] count = this.worldCounts.get(entry.world);
+
+		if (count == null) {
+			count = new int[1];
+			this.worldCounts.put(entry.world, count);
+		}
+
+		count[0]++;
+	}
+
+	/**
+	 * Forgets a mob whose death has been seen, if it was pending.
+	 * @param entity The mob which has died or gone.
+	 */
+	public void remove(Entity entity) {
+
+		Pending entry = this.pending.remove(entity.getEntityId());
+
+		if (entry != null) {
+			this.worldCounts.get(entry.world)[0]--;
+		}
+	}
+
+	/**
+	 * Returns whether a mob has been culled and its death not yet seen.
+	 * @param entity The mob to check.
+	 * @param tick The current tick.
+	 * @return Whether the mob is pending.
+	 */
+	public boolean isPending(Entity entity, long tick) {
+		expire(tick);
+		return this.pending.containsKey(entity.getEntityId());
+	}
+
+	/**
+	 * Returns whether a pending mob is to die without drops or experience.
+	 * The death handler asks this before the mob is forgotten, whichever
+	 * tick the death comes on.
+	 * @param entity The mob which is dying.
+	 * @return Whether to clear the drops and experience of the mob.
+	 */
+	public boolean isDropsSuppressed(Entity entity) {
+		Pending entry = this.pending.get(entity.getEntityId());
+		return entry != null && entry.dropsSuppressed;
+	}
+
+	/**
+	 * Returns the number of pending mobs in all worlds.
+	 * @param tick The current tick.
+	 * @return The number of pending mobs.
+	 */
+	public int getTotal(long tick) {
+		expire(tick);
+		return this.pending.size();
+	}
+
+	/**
+	 * Returns the number of pending mobs in a world.
+	 * @param world The world to return a count for.
+	 * @param tick The current tick.
+	 * @return The number of pending mobs in the world.
+	 */
+	public int getCount(World world, long tick) {
+		expire(tick);
+		int[] count = this.worldCounts.get(world.getUID());
+		return (count == null) ? 0 : count[0];
+	}
+
+	/**
+	 * Forgets the pending mobs in a chunk which is being unloaded, as they
+	 * are no longer counted either.
+	 * @param chunk The chunk which is being unloaded.
+	 */
+	public void removeChunk(Chunk chunk) {
+
+		if (this.pending.isEmpty()) {
+			return;
+		}
+
+		for (Entity entity : chunk.getEntities()) {
+			remove(entity);
+		}
+	}
+
+	/**
+	 * Forgets the pending mobs in a world which is being unloaded.
+	 * @param world The world to forget.
+	 */
+	public void removeWorld(World world) {
+
+		UUID uid = world.getUID();
+
+		for (Pending entry : this.byAge) {
+			if (entry.world.equals(uid) && this.pending.get(entry.entityId) == entry) {
+				this.pending.remove(entry.entityId);
+			}
+		}
+
+		this.worldCounts.remove(uid);
+	}
+
+	/**
+	 * Stops counting mobs which have been pending for too long.
+	 * @param tick The current tick.
+	 */
+	private void expire(long tick) {
+
+		while (!this.byAge.isEmpty() && tick - this.byAge.peekFirst().tick >= this.expiryTicks) {
+			Pending entry = this.byAge.removeFirst();
+
+			// Entries which died or were culled again are already gone.
+			if (this.pending.get(entry.entityId) == entry) {
+				this.pending.remove(entry.entityId);
+				this.worldCounts.get(entry.world)[0]--;
+			}
+		}
+	}
+}
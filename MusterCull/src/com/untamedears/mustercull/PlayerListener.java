@@ -0,0 +1,93 @@
+package com.untamedears.mustercull;
+
+import org.bukkit.Location;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+
+/**
+ * This class provides event handlers for players, to keep track of the
+ * chunks near them in which mobs may spawn.
+ */
+public class PlayerListener extends Listener {
+
+	/**
+	 * This constructor wraps the parent Listener's constructor.
+	 * @param pluginInstance A reference to the plug-in instance.
+	 */
+	public PlayerListener(MusterCull pluginInstance) {
+		super(pluginInstance);
+	}
+
+	/**
+	 * This handler is called when a player joins the server.
+	 * @param event A reference to the associated Bukkit event.
+	 */
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void onPlayerJoin(PlayerJoinEvent event) {
+		getPluginInstance().getSpawnChunks().updatePlayer(event.getPlayer(), event.getPlayer().getLocation());
+	}
+
+	/**
+	 * This handler is called when a player leaves the server.
+	 * @param event A reference to the associated Bukkit event.
+	 */
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void onPlayerQuit(PlayerQuitEvent event) {
+		getPluginInstance().getSpawnChunks().removePlayer(event.getPlayer());
+	}
+
+	/**
+	 * This handler is called when a player moves. Only moves into another
+	 * chunk change anything.
+	 * @param event A reference to the associated Bukkit event.
+	 */
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled=true)
+	public void onPlayerMove(PlayerMoveEvent event) {
+
+		Location from = event.getFrom();
+		Location to = event.getTo();
+
+		if (from.getWorld() == to.getWorld()
+				&& (from.getBlockX() >> 4) == (to.getBlockX() >> 4)
+				&& (from.getBlockZ() >> 4) == (to.getBlockZ() >> 4)) {
+			return;
+		}
+
+		getPluginInstance().getSpawnChunks().updatePlayer(event.getPlayer(), to);
+	}
+
+	/**
+	 * This handler is called when a player teleports, which may be into
+	 * another world.
+	 * @param event A reference to the associated Bukkit event.
+	 */
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled=true)
+	public void onPlayerTeleport(PlayerTeleportEvent event) {
+		getPluginInstance().getSpawnChunks().updatePlayer(event.getPlayer(), event.getTo());
+	}
+
+	/**
+	 * This handler is called once a player has changed world, including
+	 * through a portal, which onPlayerTeleport does not see.
+	 * @param event A reference to the associated Bukkit event.
+	 */
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void onPlayerChangedWorld(PlayerChangedWorldEvent event) {
+		getPluginInstance().getSpawnChunks().updatePlayer(event.getPlayer(), event.getPlayer().getLocation());
+	}
+
+	/**
+	 * This handler is called when a player respawns after dying.
+	 * @param event A reference to the associated Bukkit event.
+	 */
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void onPlayerRespawn(PlayerRespawnEvent event) {
+		getPluginInstance().getSpawnChunks().updatePlayer(event.getPlayer(), event.getRespawnLocation());
+	}
+}
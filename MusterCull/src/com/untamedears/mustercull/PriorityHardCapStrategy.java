@@ -0,0 +1,717 @@
+package com.untamedears.mustercull;
+
+import org.bukkit.entity.EntityType;
+
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Culls the least missed mobs first.
+ *
+ * Over the hard cap, a group of chunks holding too much of the server's cull
+ * score is thinned back towards the average first. Mobs are then culled in
+ * order of cull priority, keeping the types within each priority in
+ * proportion to one another.
+ */
+public class PriorityHardCapStrategy implements HardCapStrategy {
+
+	/**
+	 * Number of EntityTypes, for grouping mobs by type.
+	 */
+	private static final int TYPE_COUNT = EntityType.values().length;
+
+	/**
+	 * One more than the highest cull priority, for grouping mobs by priority.
+	 */
+	private static final int PRIORITY_COUNT = Byte.MAX_VALUE + 1;
+
+	/**
+	 * Number of chunks from the center of a super chunk to its edge.
+	 */
+	private static final int SUPER_CHUNK_RADIUS = HardCapPlanner.SUPER_CHUNK_RADIUS;
+
+	/**
+	 * The mobs to plan for.
+	 */
+	private final MobSnapshot snapshot;
+
+	/**
+	 * Reusable buckets for grouping mobs by chunk.
+	 */
+	private final ChunkBuckets chunkBuckets;
+
+	/**
+	 * The plan being built.
+	 */
+	private final CullPlan plan;
+
+	/**
+	 * The logger to report culls to.
+	 */
+	private final Logger logger;
+
+	/**
+	 * The share of the cull score a group of chunks needs for a penalty purge.
+	 */
+	private final float penaltyMobPercent;
+
+	/**
+	 * The most crowded groups of chunks to purge in a pass.
+	 */
+	private final int maxPenaltySuperChunks;
+
+	/**
+	 * Source of randomness for choosing which mobs of a type to cull.
+	 */
+	private final Random random;
+
+	/**
+	 * Constructor which takes the planner to choose mobs for.
+	 * @param planner The planner to choose mobs for.
+	 */
+	public PriorityHardCapStrategy(HardCapPlanner planner) {
+		this.snapshot = planner.getSnapshot();
+		this.chunkBuckets = planner.getChunkBuckets();
+		this.plan = planner.getPlan();
+		this.logger = planner.getLogger();
+		this.penaltyMobPercent = planner.getPenaltyMobPercent();
+		this.maxPenaltySuperChunks = planner.getMaxPenaltySuperChunks();
+		this.random = planner.getRandom();
+	}
+
+	/**
+	 * Chooses mobs to cull because the server is over the hard mob limit,
+	 * purging a crowded group of chunks first if there is one.
+	 * @param candidates The mobs which may be culled.
+	 * @param budget The number of mobs to cull.
+	 * @return How many of the budget were not culled.
+	 */
+	public int selectOverHardCap(int[] candidates, int budget) {
+
+		budget = HandleCullingBasedOnChunkConcentrationByWorld(candidates, budget);
+
+		int[] unplanned = new int[candidates.length];
+		int count = 0;
+
+		for (int mob : candidates) {
+			if (!this.plan.contains(mob)) {
+				unplanned[count++] = mob;
+			}
+		}
+
+		if (count < unplanned.length) {
+			int[] trimmed = new int[count];
+			System.arraycopy(unplanned, 0, trimmed, 0, count);
+			unplanned = trimmed;
+		}
+
+		return HandleGlobalCulling(unplanned, budget);
+	}
+
+	/**
+	 * Chooses hostiles to cull to keep a world within its spawn limit.
+	 * @param hostiles The hostiles in the world which may be culled.
+	 * @param budget The number of hostiles to cull.
+	 * @return How many of the budget were not culled.
+	 */
+	public int selectHostiles(int[] hostiles, int budget) {
+		return HandleGlobalCulling(hostiles, budget);
+	}
+
+	/**
+	 * Runs the chunk concentration step for each world on its own, so mobs at
+	 * the same chunk coordinates in different worlds are never grouped into
+	 * one super chunk. The mobs to kill are shared between worlds by mob count.
+	 * @param mobs The mobs which may be culled, from any number of worlds.
+	 * @param mobCountToCull Amount of mobs we would like to kill in total.
+	 * @return How many mobs are left of the mobs we would like to kill.
+	 */
+	private int HandleCullingBasedOnChunkConcentrationByWorld(int[] mobs, int mobCountToCull)
+	{
+		int[] counts = new int[this.snapshot.getWorldCount()];
+
+		for (int mob : mobs) {
+			counts[this.snapshot.getWorld(mob)]++;
+		}
+
+		int toKill = mobCountToCull;
+		int left = mobs.length;
+
+		for (int world = 0; world < counts.length && toKill > 0; world++)
+		{
+			if (counts[world] == 0)
+			{
+				continue;
+			}
+
+			// Each world takes its share, and the last world any the worlds before it could not cull.
+			left -= counts[world];
+			int budget = left == 0 ? toKill : (int) Math.min(toKill, (long) mobCountToCull * counts[world] / mobs.length);
+			int[] worldMobs = mobs;
+
+			if (counts[world] < mobs.length)
+			{
+				worldMobs = new int[counts[world]];
+				int count = 0;
+
+				for (int mob : mobs) {
+					if (this.snapshot.getWorld(mob) == world) {
+						worldMobs[count++] = mob;
+					}
+				}
+			}
+
+			toKill -= budget - HandleCullingBasedOnChunkConcentration(worldMobs, budget);
+		}
+
+		return toKill;
+	}
+
+	/**
+	 * Given an integer mob to kill count, it will attempt to find if there are any problem chunks and begin a culling.
+	 * Up to hard_cap_penalty_super_chunks groups of chunks which do not overlap are purged, sharing the mobs to kill.
+	 * @param mobs The mobs which may be culled, all in one world.
+	 * @param mobCountToCull Amount of mobs we would like to kill in total - not the amount of mobs we have to kill just from this chunk based culling.
+	 * @return How many mobs are left of the mobs we would like to kill.
+	 */
+	private int HandleCullingBasedOnChunkConcentration(int[] mobs, int mobCountToCull)
+	{
+		ChunkBuckets chunkEntities = this.chunkBuckets;
+		int totalCullScore = 0;
+
+		chunkEntities.clear();
+
+		for (int mob : mobs) {
+			chunkEntities.add(this.snapshot.getChunkX(mob), this.snapshot.getChunkZ(mob), mob);
+			totalCullScore += this.snapshot.getPriority(mob);
+		}
+
+		// Score each chunk once, for the window sums below.
+		int[] chunkScores = new int[chunkEntities.getBucketCount()];
+
+		for (int bucket = 0; bucket < chunkEntities.getBucketCount(); bucket++) {
+			for (int entry = chunkEntities.first(bucket); entry != -1; entry = chunkEntities.next(entry)) {
+				chunkScores[bucket] += this.snapshot.getPriority(chunkEntities.getMob(entry));
+			}
+		}
+
+		// For each chunk sum the 7x7 chunks around it and keep the worst super chunks which do not overlap.
+		ChunkWindowSums windows = new ChunkWindowSums(chunkEntities, chunkScores);
+		SuperChunkHeap worst = new SuperChunkHeap(this.maxPenaltySuperChunks);
+		long[] window = new long[2];
+
+		for (int i = 0; i < windows.size(); i++)
+		{
+			windows.sumWindow(windows.getChunkX(i), windows.getChunkZ(i), SUPER_CHUNK_RADIUS, window);
+
+			// If a super chunk doesn't meet the penalty purge percent, skip it.
+			if (window[0] / ((1.0) * totalCullScore) <= this.penaltyMobPercent)
+			{
+				continue;
+			}
+
+			worst.offer(windows.getChunkX(i), windows.getChunkZ(i), (int) window[0]);
+		}
+
+		if (worst.size == 0)
+		{
+			return mobCountToCull;
+		}
+
+		// Number of chunks with mobs, and their score, excepting the bad super chunks.
+		// The super chunks do not overlap, so no chunk is counted twice.
+		int chunksInMatchSets = 0;
+		long scoreInMatchSets = 0;
+
+		for (int i = 0; i < worst.size; i++)
+		{
+			for (int x = -SUPER_CHUNK_RADIUS; x <= SUPER_CHUNK_RADIUS; x++)
+			{
+				for (int z = -SUPER_CHUNK_RADIUS; z <= SUPER_CHUNK_RADIUS; z++)
+				{
+					int bucket = chunkEntities.find(worst.xs[i] + x, worst.zs[i] + z);
+
+					if (bucket != -1)
+					{
+						chunksInMatchSets++;
+						scoreInMatchSets += chunkScores[bucket];
+					}
+				}
+			}
+		}
+
+		int numberOfChunksToAverageOver = (chunkEntities.getBucketCount() - chunksInMatchSets);
+
+		// If the 'penalty chunks' -are- all the chunks loaded, early out.
+		if (numberOfChunksToAverageOver <= 0)
+		{
+			return mobCountToCull;
+		}
+
+		int averageScorePerChunk = (int) Math.ceil((totalCullScore - scoreInMatchSets) / (1. * numberOfChunksToAverageOver));
+		int[] superChunkMobScoreToCull = new int[worst.size];
+		long totalScoreToCull = 0;
+		int penaltySuperChunks = 0;
+
+		for (int i = 0; i < worst.size; i++)
+		{
+			// A super chunk which met the limit but is not more than the average is left alone.
+			// Only in special cases where loaded chunks are extremely few.
+			superChunkMobScoreToCull[i] = Math.max(0, worst.scores[i] - averageScorePerChunk);
+
+			if (superChunkMobScoreToCull[i] > 0)
+			{
+				// Log out the naughty chunk.
+				this.logger.warning("Hard Cap Laborer - Found chunk that triggered a penalty purge based on mob count.  Chunk " + worst.xs[i] + ", " + worst.zs[i] + " in " + this.snapshot.getWorldInfo(this.snapshot.getWorld(mobs[0])).getName() + ".");
+				totalScoreToCull += superChunkMobScoreToCull[i];
+				penaltySuperChunks++;
+			}
+		}
+
+		if (penaltySuperChunks == 0)
+		{
+			return mobCountToCull;
+		}
+
+		this.plan.addPenaltySuperChunks(penaltySuperChunks);
+
+		for (int i = 0; i < worst.size && mobCountToCull > 0; i++)
+		{
+			// Share the mobs to cull between the super chunks by how far over the average each is.
+			int scoreToCull = totalScoreToCull <= mobCountToCull ? superChunkMobScoreToCull[i]
+					: (int) ((long) mobCountToCull * superChunkMobScoreToCull[i] / totalScoreToCull);
+
+			if (scoreToCull <= 0)
+			{
+				continue;
+			}
+
+			// Consider purging every mob in the chunks surrounding it.  7x7 with the superchunk at the center.
+			int[] mobsToConsiderPurging = getSuperChunkMobs(worst.xs[i], worst.zs[i]);
+
+			// We are only going to purge enough to bring this superchunk into a good status with our other chunks.
+			int maxItemsToCull = Math.min(mobCountToCull, scoreToCull);
+			mobCountToCull -= maxItemsToCull - PerformCullingLogic(mobsToConsiderPurging, maxItemsToCull, scoreToCull);
+		}
+
+		return mobCountToCull;
+	}
+
+	/**
+	 * Returns the mobs in the 7x7 chunks around a chunk.
+	 * @param centerX The x coordinate of the center chunk.
+	 * @param centerZ The z coordinate of the center chunk.
+	 * @return The mobs in the super chunk.
+	 */
+	private int[] getSuperChunkMobs(int centerX, int centerZ)
+	{
+		ChunkBuckets chunkEntities = this.chunkBuckets;
+		int considered = 0;
+
+		for (int x = -SUPER_CHUNK_RADIUS; x <= SUPER_CHUNK_RADIUS; x++)
+		{
+			for (int z = -SUPER_CHUNK_RADIUS; z <= SUPER_CHUNK_RADIUS; z++)
+			{
+				int bucket = chunkEntities.find(centerX - x, centerZ - z);
+
+				if (bucket != -1)
+				{
+					considered += chunkEntities.getSize(bucket);
+				}
+			}
+		}
+
+		int[] mobs = new int[considered];
+		considered = 0;
+
+		for (int x = -SUPER_CHUNK_RADIUS; x <= SUPER_CHUNK_RADIUS; x++)
+		{
+			for (int z = -SUPER_CHUNK_RADIUS; z <= SUPER_CHUNK_RADIUS; z++)
+			{
+				int bucket = chunkEntities.find(centerX - x, centerZ - z);
+
+				if (bucket != -1)
+				{
+					for (int entry = chunkEntities.first(bucket); entry != -1; entry = chunkEntities.next(entry)) {
+						mobs[considered++] = chunkEntities.getMob(entry);
+					}
+				}
+			}
+		}
+
+		return mobs;
+	}
+
+	/**
+	 * The worst super chunks seen so far, none overlapping another, as a
+	 * min-heap on score so the least bad is dropped when a worse one is found.
+	 */
+	private static class SuperChunkHeap {
+
+		/**
+		 * The center chunk coordinates of each super chunk.
+		 */
+		private final int[] xs, zs;
+
+		/**
+		 * The cull score of each super chunk.
+		 */
+		private final int[] scores;
+
+		/**
+		 * The number of super chunks held.
+		 */
+		private int size = 0;
+
+		/**
+		 * Constructor which sets the most super chunks to hold.
+		 * @param capacity The most super chunks to hold.
+		 */
+		private SuperChunkHeap(int capacity) {
+			this.xs = new int[capacity];
+			this.zs = new int[capacity];
+			this.scores = new int[capacity];
+		}
+
+		/**
+		 * Considers a super chunk. If it overlaps super chunks already held it
+		 * replaces them only if it is worse than all of them; otherwise it
+		 * replaces the least bad one when full.
+		 * @param x The x coordinate of the center chunk.
+		 * @param z The z coordinate of the center chunk.
+		 * @param score The cull score of the super chunk.
+		 */
+		private void offer(int x, int z, int score) {
+
+			boolean overlaps = false;
+
+			for (int i = 0; i < this.size; i++) {
+				if (overlaps(i, x, z)) {
+					if (this.scores[i] >= score) {
+						return;
+					}
+
+					overlaps = true;
+				}
+			}
+
+			if (overlaps) {
+				int kept = 0;
+
+				for (int i = 0; i < this.size; i++) {
+					if (!overlaps(i, x, z)) {
+						set(kept++, this.xs[i], this.zs[i], this.scores[i]);
+					}
+				}
+
+				this.size = kept;
+				set(this.size++, x, z, score);
+
+				for (int i = this.size / 2 - 1; i >= 0; i--) {
+					siftDown(i);
+				}
+			}
+			else if (this.size < this.scores.length) {
+				int slot = this.size++;
+
+				while (slot > 0 && this.scores[(slot - 1) >> 1] > score) {
+					int parent = (slot - 1) >> 1;
+					set(slot, this.xs[parent], this.zs[parent], this.scores[parent]);
+					slot = parent;
+				}
+
+				set(slot, x, z, score);
+			}
+			else if (score > this.scores[0]) {
+				set(0, x, z, score);
+				siftDown(0);
+			}
+		}
+
+		/**
+		 * Returns whether a held super chunk shares any chunk with another.
+		 * @param i The position of the held super chunk.
+		 * @param x The x coordinate of the other center chunk.
+		 * @param z The z coordinate of the other center chunk.
+		 * @return Whether the two super chunks overlap.
+		 */
+		private boolean overlaps(int i, int x, int z) {
+			return Math.abs(this.xs[i] - x) <= 2 * SUPER_CHUNK_RADIUS && Math.abs(this.zs[i] - z) <= 2 * SUPER_CHUNK_RADIUS;
+		}
+
+		/**
+		 * Stores a super chunk at a position.
+		 * @param i The position.
+		 * @param x The x coordinate of the center chunk.
+		 * @param z The z coordinate of the center chunk.
+		 * @param score The cull score of the super chunk.
+		 */
+		private void set(int i, int x, int z, int score) {
+			this.xs[i] = x;
+			this.zs[i] = z;
+			this.scores[i] = score;
+		}
+
+		/**
+		 * Moves a super chunk down the heap until neither child has a lower score.
+		 * @param i The position of the super chunk.
+		 */
+		private void siftDown(int i) {
+
+			int x = this.xs[i], z = this.zs[i], score = this.scores[i];
+
+			while (true) {
+				int child = i * 2 + 1;
+
+				if (child >= this.size) {
+					break;
+				}
+
+				if (child + 1 < this.size && this.scores[child + 1] < this.scores[child]) {
+					child++;
+				}
+
+				if (this.scores[child] >= score) {
+					break;
+				}
+
+				set(i, this.xs[child], this.zs[child], this.scores[child]);
+				i = child;
+			}
+
+			set(i, x, z, score);
+		}
+	}
+
+	/**
+	 * For a given set of candidates, we will first bring the candidates into proportion based on entity type (up to max items to cull) and will then round-robin remove them (up to max items to cull)
+	 * @param cullCandidates The mobs which may be culled.
+	 * @param maxItemsToCull Maximum items to cull on this run.
+	 * @param scoreToCull The total cull priority to remove.
+	 * @return The number of items remaining out of the orignal items-to-cull passed in.
+	 */
+	private int PerformCullingLogic(int[] cullCandidates, int maxItemsToCull, int scoreToCull)
+	{
+		if (scoreToCull == 0) return scoreToCull;
+
+		// Step 1 - Categorize all items on our list into categories based on priority.
+		int[] priorities = new int[cullCandidates.length];
+
+		for (int i = 0; i < cullCandidates.length; i++) {
+			priorities[i] = this.snapshot.getPriority(cullCandidates[i]);
+		}
+
+		int[] starts = new int[PRIORITY_COUNT + 1];
+		int[] prioritisedMobs = groupByKey(cullCandidates, 0, cullCandidates.length, priorities, starts);
+
+		// Step 2 - Cull based on purge priorities, highest first.
+		for (int priority = PRIORITY_COUNT - 1; priority >= 0 && scoreToCull > 0; priority--) {
+			if (starts[priority] == starts[priority + 1]) {
+				continue;
+			}
+
+			int remaining = purgeToEquivalentNumbers(maxItemsToCull, prioritisedMobs, starts[priority], starts[priority + 1]);
+			int culled = maxItemsToCull - remaining;
+			scoreToCull -= culled * priority;
+			maxItemsToCull = remaining;
+		}
+
+		return maxItemsToCull;
+	}
+
+	/**
+	 * For mobs all of the same priority, we will attempt to bring the types into proportion with one another and then round-robin remove (up to max items to cull).
+	 *
+	 * How many of each type to cull is worked out first: types over the
+	 * average are cut back to it, largest first, then one of each type is
+	 * taken in turn until enough are culled. The mobs of each type are then
+	 * picked at random with a partial shuffle, so the work is linear in the
+	 * number of mobs however many are culled.
+	 * @param maxItemsToCull Maximum amount of items we can cull.
+	 * @param mobs Holds the mobs to cull from.
+	 * @param from The position of the first mob to cull from.
+	 * @param to The position after the last mob to cull from.
+	 * @return Of the maxItemsToCull originally passed in, how many remain to be culled.
+	 */
+	private int purgeToEquivalentNumbers(int maxItemsToCull, int[] mobs, int from, int to) {
+
+		// Early out if we have no work to do.
+		if (from >= to || maxItemsToCull <= 0)
+		{
+			return maxItemsToCull;
+		}
+
+		// Separate mobs by entity type.
+		int[] types = new int[to - from];
+
+		for (int i = from; i < to; i++) {
+			types[i - from] = this.snapshot.getType(mobs[i]).ordinal();
+		}
+
+		int[] starts = new int[TYPE_COUNT + 1];
+		int[] grouped = groupByKey(mobs, from, to, types, starts);
+
+		// Order the types by the ones with the most first.
+		int[] categories = new int[TYPE_COUNT];
+		int categoryCount = 0;
+
+		for (int type = 0; type < TYPE_COUNT; type++) {
+			int size = starts[type + 1] - starts[type];
+
+			if (size == 0) {
+				continue;
+			}
+
+			int i = categoryCount++;
+
+			while (i > 0 && starts[categories[i - 1] + 1] - starts[categories[i - 1]] < size) {
+				categories[i] = categories[i - 1];
+				i--;
+			}
+
+			categories[i] = type;
+		}
+
+		int average = (to - from) / categoryCount;
+		int[] quotas = new int[categoryCount];
+		int[] left = new int[categoryCount];
+		int mostLeft = 0;
+		long totalLeft = 0;
+
+		// Bring the largest categories down to the average first.
+		for (int i = 0; i < categoryCount; i++) {
+			int size = starts[categories[i] + 1] - starts[categories[i]];
+
+			if (size > average && maxItemsToCull > 0) {
+				quotas[i] = Math.min(size - average, maxItemsToCull);
+				maxItemsToCull -= quotas[i];
+			}
+
+			left[i] = size - quotas[i];
+			mostLeft = Math.max(mostLeft, left[i]);
+			totalLeft += left[i];
+		}
+
+		// Then take one of each in turn; find how many full turns fit.
+		if (maxItemsToCull > 0) {
+
+			if (totalLeft <= maxItemsToCull) {
+				for (int i = 0; i < categoryCount; i++) {
+					quotas[i] += left[i];
+				}
+
+				maxItemsToCull -= (int) totalLeft;
+			}
+			else {
+				int low = 0;
+				int high = mostLeft;
+
+				while (low < high) {
+					int turns = (low + high + 1) >>> 1;
+
+					if (takenInTurns(left, categoryCount, turns) <= maxItemsToCull) {
+						low = turns;
+					}
+					else {
+						high = turns - 1;
+					}
+				}
+
+				maxItemsToCull -= takenInTurns(left, categoryCount, low);
+
+				// The last, partial turn takes from the earliest categories.
+				for (int i = 0; i < categoryCount; i++) {
+					int taken = Math.min(left[i], low);
+
+					if (left[i] > low && maxItemsToCull > 0) {
+						taken++;
+						maxItemsToCull--;
+					}
+
+					quotas[i] += taken;
+				}
+			}
+		}
+
+		for (int i = 0; i < categoryCount; i++) {
+			pickRandom(grouped, starts[categories[i]], starts[categories[i] + 1], quotas[i]);
+		}
+
+		return maxItemsToCull;
+	}
+
+	/**
+	 * Returns how many mobs are taken by a number of turns of one per category.
+	 * @param left The number of mobs in each category.
+	 * @param categoryCount The number of categories.
+	 * @param turns The number of turns.
+	 * @return The number of mobs taken.
+	 */
+	private static int takenInTurns(int[] left, int categoryCount, int turns) {
+		int taken = 0;
+
+		for (int i = 0; i < categoryCount; i++) {
+			taken += Math.min(left[i], turns);
+		}
+
+		return taken;
+	}
+
+	/**
+	 * Culls mobs picked at random from a range, with a partial Fisher-Yates shuffle.
+	 * @param mobs Holds the mobs to pick from; the range is reordered.
+	 * @param from The position of the first mob to pick from.
+	 * @param to The position after the last mob to pick from.
+	 * @param count The number of mobs to cull.
+	 */
+	private void pickRandom(int[] mobs, int from, int to, int count) {
+		for (int i = from; i < from + count; i++) {
+			int j = i + this.random.nextInt(to - i);
+			int mob = mobs[j];
+			mobs[j] = mobs[i];
+			mobs[i] = mob;
+
+			this.plan.add(mob);
+		}
+	}
+
+	/**
+	 * Orders a range of mobs by key with a counting sort.
+	 * @param mobs Holds the mobs to group.
+	 * @param from The position of the first mob to group.
+	 * @param to The position after the last mob to group.
+	 * @param keys The key of each mob in the range, from zero.
+	 * @param starts Receives where each key's group starts, with the end in the last entry.
+	 * @return The mobs ordered by key.
+	 */
+	private static int[] groupByKey(int[] mobs, int from, int to, int[] keys, int[] starts) {
+
+		for (int key : keys) {
+			starts[key + 1]++;
+		}
+
+		for (int key = 1; key < starts.length; key++) {
+			starts[key] += starts[key - 1];
+		}
+
+		int[] grouped = new int[to - from];
+		int[] next = starts.clone();
+
+		for (int i = from; i < to; i++) {
+			grouped[next[keys[i - from]]++] = mobs[i];
+		}
+
+		return grouped;
+	}
+
+	/**
+	 * Will perform categorized and proportional global culling in priority order.
+	 * @param mobList The mobs which may be culled.
+	 * @param overHardMobLimit Max number of items to purge.
+	 * @return The number of mobs left to cull.
+	 */
+	private int HandleGlobalCulling(int[] mobList, int overHardMobLimit)
+	{
+		return PerformCullingLogic(mobList, overHardMobLimit, mobList.length * 10);
+	}
+}
@@ -0,0 +1,63 @@
+package com.untamedears.mustercull;
+
+/**
+ * Culls mobs picked uniformly at random, or in proportion to the number of
+ * mobs in their chunk if hard_cap_random_density_weighting is set.
+ */
+public class RandomHardCapStrategy implements HardCapStrategy {
+
+	/**
+	 * The planner to choose mobs for.
+	 */
+	private final HardCapPlanner planner;
+
+	/**
+	 * Constructor which takes the planner to choose mobs for.
+	 * @param planner The planner to choose mobs for.
+	 */
+	public RandomHardCapStrategy(HardCapPlanner planner) {
+		this.planner = planner;
+	}
+
+	/**
+	 * Chooses mobs to cull because the server is over the hard mob limit.
+	 * @param candidates The mobs which may be culled; may be reordered.
+	 * @param budget The number of mobs to cull.
+	 * @return How many of the budget were not culled.
+	 */
+	public int selectOverHardCap(int[] candidates, int budget) {
+		return budget - pick(candidates, budget);
+	}
+
+	/**
+	 * Chooses hostiles to cull to keep a world within its spawn limit.
+	 * @param hostiles The hostiles in the world which may be culled; may be reordered.
+	 * @param budget The number of hostiles to cull.
+	 * @return How many of the budget were not culled.
+	 */
+	public int selectHostiles(int[] hostiles, int budget) {
+		return budget - pick(hostiles, budget);
+	}
+
+	/**
+	 * Culls mobs picked at random.
+	 * @param mobs The mobs to pick from; may be reordered.
+	 * @param count The number of mobs to cull.
+	 * @return The number of mobs culled.
+	 */
+	private int pick(int[] mobs, int count) {
+
+		if (!this.planner.getDensityWeighting()) {
+			return MobSampler.sample(mobs, count, this.planner.getPlan(), this.planner.getRandom());
+		}
+
+		int[] densities = this.planner.getMobDensities(0);
+		double[] weights = new double[mobs.length];
+
+		for (int i = 0; i < mobs.length; i++) {
+			weights[i] = densities[mobs[i]];
+		}
+
+		return MobSampler.sampleWeighted(mobs, weights, count, this.planner.getPlan(), this.planner.getRandom());
+	}
+}
@@ -0,0 +1,29 @@
+package com.untamedears.mustercull;
+
+/**
+ * This class periodically logs a summary of cancelled spawns.
+ */
+public class SpawnCancelLaborer extends Laborer {
+
+	/**
+	 * Constructor which takes a reference to the main plug-in class.
+	 * @param pluginInstance A reference to the main plug-in class.
+	 */
+	public SpawnCancelLaborer(MusterCull pluginInstance) {
+		super(pluginInstance);
+	}
+
+	/**
+	 * Repeating summary method for the class.
+	 */
+	@Override
+	public void run() {
+
+		Configuration config = this.getPluginInstance().getConfiguration();
+		String summary = this.getPluginInstance().getSpawnCancelTally().flush(config.getTicksBetweenSpawnCancelSummary(), config.getSpawnCancelSummaryChunks());
+
+		if (summary != null) {
+			this.getPluginInstance().getLogger().info(summary);
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package com.untamedears.mustercull;
+
+import org.bukkit.World;
+import org.bukkit.entity.EntityType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts cancelled spawns by world, EntityType and CullType between summaries.
+ *
+ * Logging every cancelled spawn floods the console under a mob farm, so the
+ * counts are kept here and written out as a single line on an interval,
+ * optionally with the chunks which had the most spawns cancelled.
+ */
+public class SpawnCancelTally {
+
+	/**
+	 * The number of CullTypes, for indexing counts by type and culling.
+	 */
+	private static final int CULL_TYPES = CullType.values().length;
+
+	/**
+	 * Counts for a single world.
+	 */
+	private static class WorldTally {
+
+		/**
+		 * Cancelled spawns by EntityType ordinal and CullType ordinal.
+		 */
+		private final int[] counts = new int[EntityType.values().length * CULL_TYPES];
+
+		/**
+		 * Cancelled spawns by chunk key.
+		 */
+		private final LongHashMap<int[]> chunks = new LongHashMap<int[]>();
+	}
+
+	/**
+	 * A chunk and its count, for ranking the busiest chunks.
+	 */
+	private static class ChunkCount {
+
+		/**
+		 * The name of the world the chunk is in.
+		 */
+		private final String world;
+
+		/**
+		 * The packed key of the chunk.
+		 */
+		private final long key;
+
+		/**
+		 * The number of spawns cancelled in the chunk.
+		 */
+		private final int count;
+
+		/**
+		 * Constructor which sets all properties of this class.
+		 * @param world The name of the world the chunk is in.
+		 * @param key The packed key of the chunk.
+		 * @param count The number of spawns cancelled in the chunk.
+		 */
+		private ChunkCount(String world, long key, int count) {
+			this.world = world;
+			this.key = key;
+			this.count = count;
+		}
+	}
+
+	/**
+	 * Counts for each world, keyed by world name.
+	 */
+	private Map<String, WorldTally> worldTallies = new HashMap<String, WorldTally>();
+
+	/**
+	 * Number of spawns cancelled since the last summary.
+	 */
+	private int total = 0;
+
+	/**
+	 * Counts a cancelled spawn.
+	 * @param world The world of the spawn.
+	 * @param type The type of mob which was cancelled.
+	 * @param culling The method of culling which cancelled it.
+	 * @param chunkX The x coordinate of the chunk of the spawn.
+	 * @param chunkZ The z coordinate of the chunk of the spawn.
+	 * @param trackChunk Whether to count the spawn against its chunk.
+	 */
+	public void record(World world, EntityType type, CullType culling, int chunkX, int chunkZ, boolean trackChunk) {
+
+		WorldTally tally = this.worldTallies.get(world.getName());
+
+		if (tally == null) {
+			tally = new WorldTally();
+			this.worldTallies.put(world.getName(), tally);
+		}
+
+		tally.counts[type.ordinal() * CULL_TYPES + culling.ordinal()]++;
+		this.total++;
+
+		if (trackChunk) {
+			long key = ChunkKey.of(chunkX, chunkZ);
+			int[] count = tally.chunks.get(key);
+
+			if (count == null) {
+				count = new int[1];
+				tally.chunks.put(key, count);
+			}
+
+			count[0]++;
+		}
+	}
+
+	/**
+	 * Returns the number of spawns cancelled since the last summary.
+	 * @return The number of spawns cancelled since the last summary.
+	 */
+	public int getTotal() {
+		return this.total;
+	}
+
+	/**
+	 * Builds a one line summary of the counts and starts counting afresh.
+	 * @param ticks The number of ticks the counts cover, for the message.
+	 * @param topChunks The number of busiest chunks to list.
+	 * @return The summary, or null if no spawns were cancelled.
+	 */
+	public String flush(long ticks, int topChunks) {
+
+		if (this.total == 0) {
+			return null;
+		}
+
+		StringBuilder sb = new StringBuilder();
+		List<ChunkCount> chunkCounts = new ArrayList<ChunkCount>();
+		EntityType[] types = EntityType.values();
+		CullType[] cullTypes = CullType.values();
+
+		sb.append("Cancelled ");
+		sb.append(this.total);
+		sb.append(" spawns in the last ");
+		sb.append(ticks);
+		sb.append(" ticks:");
+
+		for (Map.Entry<String, WorldTally> entry : this.worldTallies.entrySet()) {
+			WorldTally tally = entry.getValue();
+			boolean first = true;
+
+			sb.append(" ");
+			sb.append(entry.getKey());
+			sb.append(" [");
+
+			for (int i = 0; i < tally.counts.length; i++) {
+				if (tally.counts[i] == 0) {
+					continue;
+				}
+
+				if (!first) {
+					sb.append(", ");
+				}
+
+				sb.append(types[i / CULL_TYPES].toString());
+				sb.append("/");
+				sb.append(cullTypes[i % CULL_TYPES].toString());
+				sb.append("=");
+				sb.append(tally.counts[i]);
+				first = false;
+			}
+
+			sb.append("]");
+
+			for (int i = 0; i < tally.chunks.capacity(); i++) {
+				int[] count = tally.chunks.valueAt(i);
+
+				if (count != null) {
+					chunkCounts.add(new ChunkCount(entry.getKey(), tally.chunks.keyAt(i), count[0]));
+				}
+			}
+		}
+
+		if (topChunks > 0 && !chunkCounts.isEmpty()) {
+			Collections.sort(chunkCounts, new Comparator<ChunkCount>() {
+				public int compare(ChunkCount o1, ChunkCount o2) {
+					return o2.count - o1.count;
+				}
+			});
+
+			sb.append("; busiest chunks:");
+
+			for (int i = 0; i < topChunks && i < chunkCounts.size(); i++) {
+				ChunkCount chunk = chunkCounts.get(i);
+
+				sb.append(" ");
+				sb.append(chunk.world);
+				sb.append("(");
+				sb.append(ChunkKey.getX(chunk.key));
+				sb.append(",");
+				sb.append(ChunkKey.getZ(chunk.key));
+				sb.append(")=");
+				sb.append(chunk.count);
+			}
+		}
+
+		this.worldTallies = new HashMap<String, WorldTally>();
+		this.total = 0;
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,295 @@
+package com.untamedears.mustercull;
+
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps a count of the loaded chunks near players in which mobs may spawn,
+ * per world.
+ *
+ * Each chunk within range of a player holds a count of the players in range
+ * of it, so players whose ranges overlap share chunks rather than counting
+ * them twice. The counts are only changed when a player crosses into another
+ * chunk, joins, leaves or changes world, and when a chunk in range is loaded
+ * or unloaded, so the number of spawnable chunks is always to hand.
+ */
+public class SpawnChunkTracker {
+
+	/**
+	 * The furthest a player's spawn range reaches in chunks.
+	 */
+	private static final int MAX_RANGE = 8;
+
+	/**
+	 * Chunks near players in a single world.
+	 */
+	private static class WorldChunks {
+
+		/**
+		 * For each chunk near a player, by ChunkKey: the number of players in
+		 * range of it, and 1 if it is loaded or 0 if not.
+		 */
+		private final LongHashMap<int[]> chunks = new LongHashMap<int[]>();
+
+		/**
+		 * Number of chunks near players which are loaded.
+		 */
+		private int loaded = 0;
+	}
+
+	/**
+	 * Where a player was last counted.
+	 */
+	private static class PlayerChunk {
+
+		/**
+		 * The UID of the world the player was in.
+		 */
+		private final UUID world;
+
+		/**
+		 * The chunk X coordinate the player was in.
+		 */
+		private final int chunkX;
+
+		/**
+		 * The chunk Z coordinate the player was in.
+		 */
+		private final int chunkZ;
+
+		/**
+		 * The range in chunks counted around the player.
+		 */
+		private final int range;
+
+		/**
+		 * Constructor which sets where a player was counted.
+		 * @param world The UID of the world the player was in.
+		 * @param chunkX The chunk X coordinate the player was in.
+		 * @param chunkZ The chunk Z coordinate the player was in.
+		 * @param range The range in chunks counted around the player.
+		 */
+		private PlayerChunk(UUID world, int chunkX, int chunkZ, int range) {
+			this.world = world;
+			this.chunkX = chunkX;
+			this.chunkZ = chunkZ;
+			this.range = range;
+		}
+	}
+
+	/**
+	 * Buffer for a reference to the main plug-in class.
+	 */
+	private MusterCull pluginInstance = null;
+
+	/**
+	 * Chunks near players in each world, keyed by world UID.
+	 */
+	private Map<UUID, WorldChunks> worldChunks = new HashMap<UUID, WorldChunks>();
+
+	/**
+	 * Where each player was last counted, keyed by player UUID.
+	 */
+	private Map<UUID, PlayerChunk> players = new HashMap<UUID, PlayerChunk>();
+
+	/**
+	 * Constructor which takes a reference to the main plug-in class.
+	 * @param pluginInstance A reference to the main plug-in class.
+	 */
+	public SpawnChunkTracker(MusterCull pluginInstance) {
+		this.pluginInstance = pluginInstance;
+	}
+
+	/**
+	 * Counts every player now online, forgetting anything counted before.
+	 */
+	public void addOnlinePlayers() {
+
+		this.worldChunks.clear();
+		this.players.clear();
+
+		for (Player player : this.pluginInstance.getServer().getOnlinePlayers()) {
+			updatePlayer(player, player.getLocation());
+		}
+	}
+
+	/**
+	 * Recounts a player who may have moved into another chunk or world.
+	 * Does nothing if the player is still in the chunk last counted.
+	 * @param player The player to recount.
+	 * @param location Where the player now is.
+	 */
+	public void updatePlayer(Player player, Location location) {
+
+		World world = location.getWorld();
+
+		if (world == null) {
+			return;
+		}
+
+		int chunkX = location.getBlockX() >> 4;
+		int chunkZ = location.getBlockZ() >> 4;
+		PlayerChunk last = this.players.get(player.getUniqueId());
+
+		if (last != null && last.chunkX == chunkX && last.chunkZ == chunkZ && last.world.equals(world.getUID())) {
+			return;
+		}
+
+		if (last != null) {
+			removeRange(last);
+		}
+
+		PlayerChunk next = new PlayerChunk(world.getUID(), chunkX, chunkZ, getRange());
+		this.players.put(player.getUniqueId(), next);
+
+		WorldChunks chunks = getWorldChunks(world.getUID());
+
+		for (int x = chunkX - next.range; x <= chunkX + next.range; x++) {
+			for (int z = chunkZ - next.range; z <= chunkZ + next.range; z++) {
+				long key = ChunkKey.of(x, z);
+				int[] entry = chunks.chunks.get(key);
+
+				if (entry == null) {
+					entry = new int[] { 0, world.isChunkLoaded(x, z) ? 1 : 0 };
+					chunks.chunks.put(key, entry);
+					chunks.loaded += entry[1];
+				}
+
+				entry[0]++;
+			}
+		}
+	}
+
+	/**
+	 * Stops counting a player who has left.
+	 * @param player The player who has left.
+	 */
+	public void removePlayer(Player player) {
+
+		PlayerChunk last = this.players.remove(player.getUniqueId());
+
+		if (last != null) {
+			removeRange(last);
+		}
+	}
+
+	/**
+	 * Notes that a chunk has been loaded, in case it is near a player.
+	 * @param chunk The chunk which was loaded.
+	 */
+	public void addChunk(Chunk chunk) {
+		setLoaded(chunk, 1);
+	}
+
+	/**
+	 * Notes that a chunk is being unloaded, in case it is near a player.
+	 * @param chunk The chunk which is being unloaded.
+	 */
+	public void removeChunk(Chunk chunk) {
+		setLoaded(chunk, 0);
+	}
+
+	/**
+	 * Forgets a world which is being unloaded. Players still counted in it
+	 * are recounted when they next move.
+	 * @param world The world to forget.
+	 */
+	public void removeWorld(World world) {
+
+		this.worldChunks.remove(world.getUID());
+
+		for (Player player : world.getPlayers()) {
+			this.players.remove(player.getUniqueId());
+		}
+	}
+
+	/**
+	 * Returns the number of loaded chunks near players in which mobs may spawn.
+	 * @param world The world to count in.
+	 * @return The number of loaded chunks near players.
+	 */
+	public int getCount(World world) {
+		WorldChunks chunks = this.worldChunks.get(world.getUID());
+		return (chunks == null) ? 0 : chunks.loaded;
+	}
+
+	/**
+	 * Returns the range in chunks around a player in which mobs may spawn.
+	 * @return The range in chunks around a player.
+	 */
+	private int getRange() {
+		int range = MAX_RANGE;
+		range = Math.min(range, this.pluginInstance.getServer().getSpawnRadius());
+		range = Math.min(range, this.pluginInstance.getServer().getViewDistance());
+		return Math.max(range, 0);
+	}
+
+	/**
+	 * Returns the chunks near players in a world, creating them if needed.
+	 * @param world The UID of the world.
+	 * @return The chunks near players in the world.
+	 */
+	private WorldChunks getWorldChunks(UUID world) {
+
+		WorldChunks chunks = this.worldChunks.get(world);
+
+		if (chunks == null) {
+			chunks = new WorldChunks();
+			this.worldChunks.put(world, chunks);
+		}
+
+		return chunks;
+	}
+
+	/**
+	 * Uncounts the chunks around where a player was last counted.
+	 * @param last Where the player was last counted.
+	 */
+	private void removeRange(PlayerChunk last) {
+
+		WorldChunks chunks = this.worldChunks.get(last.world);
+
+		if (chunks == null) {
+			return;
+		}
+
+		for (int x = last.chunkX - last.range; x <= last.chunkX + last.range; x++) {
+			for (int z = last.chunkZ - last.range; z <= last.chunkZ + last.range; z++) {
+				long key = ChunkKey.of(x, z);
+				int[] entry = chunks.chunks.get(key);
+
+				if (entry != null && --entry[0] <= 0) {
+					chunks.chunks.remove(key);
+					chunks.loaded -= entry[1];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Marks a chunk near a player as loaded or not.
+	 * @param chunk The chunk.
+	 * @param loaded 1 if the chunk is loaded, 0 if not.
+	 */
+	private void setLoaded(Chunk chunk, int loaded) {
+
+		WorldChunks chunks = this.worldChunks.get(chunk.getWorld().getUID());
+
+		if (chunks == null) {
+			return;
+		}
+
+		int[] entry = chunks.chunks.get(ChunkKey.of(chunk.getX(), chunk.getZ()));
+
+		if (entry != null) {
+			chunks.loaded += loaded - entry[1];
+			entry[1] = loaded;
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package com.untamedears.mustercull;
+
+import org.bukkit.World;
+import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps exponentially weighted moving averages of the rates mobs spawn and
+ * die at, per world and per SpawnReason.
+ *
+ * Spawns and deaths are counted over windows of WINDOW_TICKS ticks, and each
+ * finished window is folded into the averages when the world is next looked
+ * at, so nothing needs to run on a timer. Rates are in mobs per tick.
+ */
+public class SpawnRateTracker {
+
+	/**
+	 * Number of ticks spawns and deaths are counted over before being averaged in.
+	 */
+	public static final int WINDOW_TICKS = 20;
+
+	/**
+	 * Number of SpawnReasons, for counting spawns by reason.
+	 */
+	private static final int REASON_COUNT = SpawnReason.values().length;
+
+	/**
+	 * Rates for a single world.
+	 */
+	private static class WorldRates {
+
+		/**
+		 * The tick the current window started on.
+		 */
+		private long windowStart;
+
+		/**
+		 * Spawns so far in the current window, by SpawnReason ordinal.
+		 */
+		private final int[] windowSpawns = new int[REASON_COUNT];
+
+		/**
+		 * Deaths so far in the current window.
+		 */
+		private int windowDeaths = 0;
+
+		/**
+		 * Average spawns per tick, by SpawnReason ordinal.
+		 */
+		private final double[] spawnRates = new double[REASON_COUNT];
+
+		/**
+		 * Average spawns per tick for any reason.
+		 */
+		private double spawnRate = 0;
+
+		/**
+		 * Average deaths per tick.
+		 */
+		private double deathRate = 0;
+
+		/**
+		 * Constructor which starts the first window.
+		 * @param tick The current tick.
+		 */
+		private WorldRates(long tick) {
+			this.windowStart = tick;
+		}
+	}
+
+	/**
+	 * Rates for each world, keyed by world UID.
+	 */
+	private Map<UUID, WorldRates> worldRates = new HashMap<UUID, WorldRates>();
+
+	/**
+	 * How much of an average is kept from one window to the next.
+	 */
+	private double decay = Math.pow(0.5, WINDOW_TICKS / 200.0);
+
+	/**
+	 * Sets how quickly old windows stop counting.
+	 * @param halfLife The number of ticks after which a window counts half as much.
+	 */
+	public void setHalfLife(long halfLife) {
+		this.decay = Math.pow(0.5, WINDOW_TICKS / (double) Math.max(halfLife, 1));
+	}
+
+	/**
+	 * Returns the rates for a world, creating them if needed, with any
+	 * finished windows averaged in.
+	 * @param world The world to return rates for.
+	 * @param tick The current tick.
+	 * @return The rates for the world.
+	 */
+	private WorldRates getWorldRates(World world, long tick) {
+
+		WorldRates rates = this.worldRates.get(world.getUID());
+
+		if (rates == null) {
+			rates = new WorldRates(tick);
+			this.worldRates.put(world.getUID(), rates);
+			return rates;
+		}
+
+		long windows = (tick - rates.windowStart) / WINDOW_TICKS;
+
+		if (windows <= 0) {
+			return rates;
+		}
+
+		// The current window is averaged in, then any empty windows after it just decay the averages.
+		double keep = this.decay;
+		double idle = Math.pow(this.decay, windows - 1);
+		int spawns = 0;
+
+		for (int reason = 0; reason < REASON_COUNT; reason++) {
+			rates.spawnRates[reason] = (keep * rates.spawnRates[reason] + (1 - keep) * rates.windowSpawns[reason] / (double) WINDOW_TICKS) * idle;
+			spawns += rates.windowSpawns[reason];
+			rates.windowSpawns[reason] = 0;
+		}
+
+		rates.spawnRate = (keep * rates.spawnRate + (1 - keep) * spawns / (double) WINDOW_TICKS) * idle;
+		rates.deathRate = (keep * rates.deathRate + (1 - keep) * rates.windowDeaths / (double) WINDOW_TICKS) * idle;
+		rates.windowDeaths = 0;
+		rates.windowStart += windows * WINDOW_TICKS;
+
+		return rates;
+	}
+
+	/**
+	 * Counts a mob which has spawned.
+	 * @param world The world the mob spawned in.
+	 * @param reason Why the mob spawned.
+	 * @param tick The current tick.
+	 */
+	public void recordSpawn(World world, SpawnReason reason, long tick) {
+		getWorldRates(world, tick).windowSpawns[reason.ordinal()]++;
+	}
+
+	/**
+	 * Counts a mob which has died.
+	 * @param world The world the mob died in.
+	 * @param tick The current tick.
+	 */
+	public void recordDeath(World world, long tick) {
+		getWorldRates(world, tick).windowDeaths++;
+	}
+
+	/**
+	 * Returns the average rate mobs spawn at in a world.
+	 * @param world The world to return a rate for.
+	 * @param tick The current tick.
+	 * @return The average spawns per tick.
+	 */
+	public double getSpawnRate(World world, long tick) {
+		return getWorldRates(world, tick).spawnRate;
+	}
+
+	/**
+	 * Returns the average rate mobs spawn at in a world for one reason.
+	 * @param world The world to return a rate for.
+	 * @param reason The reason mobs spawned.
+	 * @param tick The current tick.
+	 * @return The average spawns per tick for the reason.
+	 */
+	public double getSpawnRate(World world, SpawnReason reason, long tick) {
+		return getWorldRates(world, tick).spawnRates[reason.ordinal()];
+	}
+
+	/**
+	 * Returns the average rate mobs die at in a world.
+	 * @param world The world to return a rate for.
+	 * @param tick The current tick.
+	 * @return The average deaths per tick.
+	 */
+	public double getDeathRate(World world, long tick) {
+		return getWorldRates(world, tick).deathRate;
+	}
+
+	/**
+	 * Returns how fast the mob count in a world is growing.
+	 * @param world The world to return a rate for.
+	 * @param tick The current tick.
+	 * @return The average spawns less deaths per tick; negative if shrinking.
+	 */
+	public double getNetRate(World world, long tick) {
+		WorldRates rates = getWorldRates(world, tick);
+		return rates.spawnRate - rates.deathRate;
+	}
+
+	/**
+	 * Forgets the rates for a world which is being unloaded.
+	 * @param world The world to forget.
+	 */
+	public void removeWorld(World world) {
+		this.worldRates.remove(world.getUID());
+	}
+}
@@ -0,0 +1,296 @@
+package com.untamedears.mustercull;
+
+import org.bukkit.World;
+import org.bukkit.entity.EntityType;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Remembers recent spawn rejections by world, chunk, EntityType and CullType.
+ *
+ * Once an area is over a SPAWN or SPAWNER limit, further spawns there get the
+ * same answer until mobs die off. A rejection is remembered for a number of
+ * ticks so repeat attempts can be turned away without counting again, and
+ * deaths of that type nearby forget it early.
+ */
+public class SpawnVerdictCache {
+
+	/**
+	 * The number of CullTypes, for numbering verdicts by type and culling.
+	 */
+	private static final int CULL_TYPES = CullType.values().length;
+
+	/**
+	 * The rejections remembered for a single chunk. Only the types and
+	 * cullings actually rejected there take up room.
+	 */
+	private static class ChunkVerdicts {
+
+		/**
+		 * The slot of each rejection, in entries 0 to size - 1.
+		 */
+		private int[] slots = new int[2];
+
+		/**
+		 * The expiry tick of each rejection, matching slots.
+		 */
+		private long[] expiries = new long[2];
+
+		/**
+		 * The number of rejections held.
+		 */
+		private int size = 0;
+
+		/**
+		 * Returns the expiry tick for a slot.
+		 * @param slot The slot for a type and culling.
+		 * @return The expiry tick, or zero if no rejection is held.
+		 */
+		private long get(int slot) {
+			for (int i = 0; i < this.size; i++) {
+				if (this.slots[i] == slot) {
+					return this.expiries[i];
+				}
+			}
+
+			return 0;
+		}
+
+		/**
+		 * Sets the expiry tick for a slot, adding it if needed.
+		 * @param slot The slot for a type and culling.
+		 * @param expiry The expiry tick.
+		 */
+		private void set(int slot, long expiry) {
+
+			for (int i = 0; i < this.size; i++) {
+				if (this.slots[i] == slot) {
+					this.expiries[i] = expiry;
+					return;
+				}
+			}
+
+			if (this.size == this.slots.length) {
+				int[] grownSlots = new int[this.size * 2];
+				long[] grownExpiries = new long[this.size * 2];
+				System.arraycopy(this.slots, 0, grownSlots, 0, this.size);
+				System.arraycopy(this.expiries, 0, grownExpiries, 0, this.size);
+				this.slots = grownSlots;
+				this.expiries = grownExpiries;
+			}
+
+			this.slots[this.size] = slot;
+			this.expiries[this.size] = expiry;
+			this.size++;
+		}
+
+		/**
+		 * Removes the rejection in an entry, moving the last one into its place.
+		 * @param i The entry to remove.
+		 */
+		private void removeAt(int i) {
+			this.size--;
+			this.slots[i] = this.slots[this.size];
+			this.expiries[i] = this.expiries[this.size];
+		}
+
+		/**
+		 * Clears the rejections for every CullType of a single EntityType.
+		 * @param first The slot of the first CullType for the EntityType.
+		 */
+		private void clearType(int first) {
+			for (int i = this.size - 1; i >= 0; i--) {
+				if (this.slots[i] >= first && this.slots[i] < first + CULL_TYPES) {
+					removeAt(i);
+				}
+			}
+		}
+
+		/**
+		 * Drops the rejections which have expired.
+		 * @param now The current tick.
+		 * @return Whether any rejection is still live.
+		 */
+		private boolean dropExpired(long now) {
+			for (int i = this.size - 1; i >= 0; i--) {
+				if (this.expiries[i] <= now) {
+					removeAt(i);
+				}
+			}
+
+			return this.size > 0;
+		}
+	}
+
+	/**
+	 * Rejections for each world, by chunk key.
+	 */
+	private Map<UUID, LongHashMap<ChunkVerdicts>> worldVerdicts = new HashMap<UUID, LongHashMap<ChunkVerdicts>>();
+
+	/**
+	 * The tick after which expired verdicts should next be dropped.
+	 */
+	private long nextPurge = 0;
+
+	/**
+	 * Returns the slot for a type and culling.
+	 * @param type The type of mob.
+	 * @param culling The method of culling.
+	 * @return The slot identifying the type and culling.
+	 */
+	private static int slot(EntityType type, CullType culling) {
+		return type.ordinal() * CULL_TYPES + culling.ordinal();
+	}
+
+	/**
+	 * Returns whether a spawn in a chunk was recently rejected.
+	 * @param world The world of the spawn.
+	 * @param chunkX The x coordinate of the chunk.
+	 * @param chunkZ The z coordinate of the chunk.
+	 * @param type The type of mob spawning.
+	 * @param culling The method of culling being checked.
+	 * @param now The current tick.
+	 * @return Whether a rejection is remembered for the chunk.
+	 */
+	public boolean isRejected(World world, int chunkX, int chunkZ, EntityType type, CullType culling, long now) {
+
+		LongHashMap<ChunkVerdicts> verdicts = this.worldVerdicts.get(world.getUID());
+
+		if (verdicts == null || verdicts.isEmpty()) {
+			return false;
+		}
+
+		ChunkVerdicts chunk = verdicts.get(ChunkKey.of(chunkX, chunkZ));
+
+		return chunk != null && chunk.get(slot(type, culling)) > now;
+	}
+
+	/**
+	 * Remembers that a spawn in a chunk was rejected.
+	 * @param world The world of the spawn.
+	 * @param chunkX The x coordinate of the chunk.
+	 * @param chunkZ The z coordinate of the chunk.
+	 * @param type The type of mob spawning.
+	 * @param culling The method of culling which rejected it.
+	 * @param now The current tick.
+	 * @param ttl The number of ticks to remember the rejection for.
+	 */
+	public void reject(World world, int chunkX, int chunkZ, EntityType type, CullType culling, long now, long ttl) {
+
+		if (now >= this.nextPurge) {
+			purge(now);
+			this.nextPurge = now + ttl;
+		}
+
+		LongHashMap<ChunkVerdicts> verdicts = this.worldVerdicts.get(world.getUID());
+
+		if (verdicts == null) {
+			verdicts = new LongHashMap<ChunkVerdicts>();
+			this.worldVerdicts.put(world.getUID(), verdicts);
+		}
+
+		long key = ChunkKey.of(chunkX, chunkZ);
+		ChunkVerdicts chunk = verdicts.get(key);
+
+		if (chunk == null) {
+			chunk = new ChunkVerdicts();
+			verdicts.put(key, chunk);
+		}
+
+		chunk.set(slot(type, culling), now + ttl);
+	}
+
+	/**
+	 * Forgets rejections of a type around a chunk, such as after a death.
+	 * @param world The world the change happened in.
+	 * @param chunkX The x coordinate of the chunk.
+	 * @param chunkZ The z coordinate of the chunk.
+	 * @param type The type of mob which changed.
+	 * @param radius The distance in chunks to forget rejections within.
+	 */
+	public void invalidate(World world, int chunkX, int chunkZ, EntityType type, int radius) {
+
+		LongHashMap<ChunkVerdicts> verdicts = this.worldVerdicts.get(world.getUID());
+
+		if (verdicts == null || verdicts.isEmpty()) {
+			return;
+		}
+
+		int first = slot(type, CullType.values()[0]);
+		long area = (2L * radius + 1) * (2L * radius + 1);
+
+		if (area > verdicts.size()) {
+			for (int i = 0; i < verdicts.capacity(); i++) {
+				ChunkVerdicts chunk = verdicts.valueAt(i);
+
+				if (chunk == null) {
+					continue;
+				}
+
+				long key = verdicts.keyAt(i);
+
+				if (Math.abs(ChunkKey.getX(key) - chunkX) <= radius && Math.abs(ChunkKey.getZ(key) - chunkZ) <= radius) {
+					chunk.clearType(first);
+				}
+			}
+		}
+		else {
+			for (int x = chunkX - radius; x <= chunkX + radius; x++) {
+				for (int z = chunkZ - radius; z <= chunkZ + radius; z++) {
+					ChunkVerdicts chunk = verdicts.get(ChunkKey.of(x, z));
+
+					if (chunk != null) {
+						chunk.clearType(first);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops chunks which no longer hold any live rejections.
+	 * @param now The current tick.
+	 */
+	private void purge(long now) {
+
+		for (LongHashMap<ChunkVerdicts> verdicts : this.worldVerdicts.values()) {
+			long[] expired = null;
+			int expiredCount = 0;
+
+			for (int i = 0; i < verdicts.capacity(); i++) {
+				ChunkVerdicts chunk = verdicts.valueAt(i);
+
+				if (chunk == null || chunk.dropExpired(now)) {
+					continue;
+				}
+
+				if (expired == null) {
+					expired = new long[verdicts.size()];
+				}
+
+				expired[expiredCount++] = verdicts.keyAt(i);
+			}
+
+			for (int i = 0; i < expiredCount; i++) {
+				verdicts.remove(expired[i]);
+			}
+		}
+	}
+
+	/**
+	 * Forgets the rejections for a world which is being unloaded.
+	 * @param world The world to forget.
+	 */
+	public void removeWorld(World world) {
+		this.worldVerdicts.remove(world.getUID());
+	}
+
+	/**
+	 * Forgets every rejection, such as after the limits have changed.
+	 */
+	public void clear() {
+		this.worldVerdicts.clear();
+	}
+}
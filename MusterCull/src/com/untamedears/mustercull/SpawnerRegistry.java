@@ -0,0 +1,342 @@
+package com.untamedears.mustercull;
+
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Tracks mob spawner blocks as they fire and rate limits each of them.
+ *
+ * Every spawner gets a token bucket holding up to its SPAWNER limit in mobs,
+ * refilled at one mob per configured number of ticks, so a grinder can be
+ * throttled in constant time without any neighborhood counting. A spawner
+ * is only charged once its mob's spawn has gone through, as the spawn may
+ * still be cancelled after the spawner fires. A decaying count of recent
+ * output is kept to report the hottest spawners.
+ */
+public class SpawnerRegistry {
+
+	/**
+	 * Number of ticks a spawner can stay quiet before it is forgotten.
+	 */
+	private static final long FORGET_TICKS = 12000L;
+
+	/**
+	 * The state of a single spawner.
+	 */
+	public static class Spawner {
+
+		/**
+		 * The name of the world the spawner is in.
+		 */
+		private final String world;
+
+		/**
+		 * The block coordinates of the spawner.
+		 */
+		private final int x, y, z;
+
+		/**
+		 * The type of mob the spawner last produced.
+		 */
+		private EntityType type;
+
+		/**
+		 * Number of mobs the spawner may still produce right now.
+		 */
+		private double tokens;
+
+		/**
+		 * Decaying count of mobs produced recently.
+		 */
+		private double recentOutput = 0;
+
+		/**
+		 * Number of spawns refused by the rate limit.
+		 */
+		private int throttled = 0;
+
+		/**
+		 * The tick the spawner last fired on.
+		 */
+		private long lastTick;
+
+		/**
+		 * The tick recentOutput was last decayed to.
+		 */
+		private long lastDecayTick;
+
+		/**
+		 * Constructor which sets the location of the spawner.
+		 * @param world The name of the world the spawner is in.
+		 * @param x The x coordinate of the spawner.
+		 * @param y The y coordinate of the spawner.
+		 * @param z The z coordinate of the spawner.
+		 * @param tokens The number of mobs the spawner may produce to start with.
+		 * @param now The current tick.
+		 */
+		private Spawner(String world, int x, int y, int z, double tokens, long now) {
+			this.world = world;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.tokens = tokens;
+			this.lastTick = now;
+			this.lastDecayTick = now;
+		}
+
+		/**
+		 * Decays the recent output count up to the current tick.
+		 * @param now The current tick.
+		 * @param outputWindow The number of ticks over which recent output halves.
+		 */
+		private void decay(long now, long outputWindow) {
+			if (now > this.lastDecayTick) {
+				this.recentOutput *= Math.pow(0.5, ((double) (now - this.lastDecayTick)) / outputWindow);
+				this.lastDecayTick = now;
+			}
+		}
+
+		/**
+		 * Returns the name of the world the spawner is in.
+		 * @return The name of the world the spawner is in.
+		 */
+		public String getWorld() {
+			return this.world;
+		}
+
+		/**
+		 * Returns the x coordinate of the spawner.
+		 * @return The x coordinate of the spawner.
+		 */
+		public int getX() {
+			return this.x;
+		}
+
+		/**
+		 * Returns the y coordinate of the spawner.
+		 * @return The y coordinate of the spawner.
+		 */
+		public int getY() {
+			return this.y;
+		}
+
+		/**
+		 * Returns the z coordinate of the spawner.
+		 * @return The z coordinate of the spawner.
+		 */
+		public int getZ() {
+			return this.z;
+		}
+
+		/**
+		 * Returns the type of mob the spawner last produced.
+		 * @return The type of mob the spawner last produced.
+		 */
+		public EntityType getType() {
+			return this.type;
+		}
+
+		/**
+		 * Returns the number of mobs produced recently.
+		 * @return The decaying count of mobs produced recently.
+		 */
+		public int getRecentOutput() {
+			return (int) Math.round(this.recentOutput);
+		}
+
+		/**
+		 * Returns the number of spawns refused by the rate limit.
+		 * @return The number of spawns refused by the rate limit.
+		 */
+		public int getThrottled() {
+			return this.throttled;
+		}
+	}
+
+	/**
+	 * Spawners for each world, keyed by world UID then by packed block position.
+	 */
+	private Map<UUID, LongHashMap<Spawner>> worldSpawners = new HashMap<UUID, LongHashMap<Spawner>>();
+
+	/**
+	 * The tick after which quiet spawners should next be forgotten.
+	 */
+	private long nextForget = FORGET_TICKS;
+
+	/**
+	 * The spawner last allowed to produce a mob, until that mob spawns.
+	 */
+	private Spawner admitted = null;
+
+	/**
+	 * The entity id of the mob the admitted spawner is producing.
+	 */
+	private int admittedEntityId;
+
+	/**
+	 * Packs block coordinates into a single long.
+	 * @param x The x coordinate of the block.
+	 * @param y The y coordinate of the block.
+	 * @param z The z coordinate of the block.
+	 * @return The packed block position.
+	 */
+	private static long blockKey(int x, int y, int z) {
+		return ((x & 0x3ffffffL) << 38) | ((z & 0x3ffffffL) << 12) | (y & 0xfffL);
+	}
+
+	/**
+	 * Decides whether a spawner may produce another mob. Nothing is charged
+	 * to the spawner until recordSpawn() is called for the mob once its
+	 * spawn has gone through.
+	 * @param world The world the spawner is in.
+	 * @param x The x coordinate of the spawner.
+	 * @param y The y coordinate of the spawner.
+	 * @param z The z coordinate of the spawner.
+	 * @param entity The mob being produced.
+	 * @param limit The SPAWNER limit for the type, which sizes the bucket.
+	 * @param ticksPerSpawn The number of ticks to earn back one mob.
+	 * @param outputWindow The number of ticks over which recent output halves.
+	 * @param now The current tick.
+	 * @return Whether the spawner may produce the mob.
+	 */
+	public boolean canSpawn(World world, int x, int y, int z, Entity entity, ConfigurationLimit limit, long ticksPerSpawn, long outputWindow, long now) {
+
+		if (now >= this.nextForget) {
+			forgetQuiet(now);
+			this.nextForget = now + FORGET_TICKS;
+		}
+
+		LongHashMap<Spawner> spawners = this.worldSpawners.get(world.getUID());
+
+		if (spawners == null) {
+			spawners = new LongHashMap<Spawner>();
+			this.worldSpawners.put(world.getUID(), spawners);
+		}
+
+		int capacity = Math.max(1, limit.getLimit());
+		long key = blockKey(x, y, z);
+		Spawner spawner = spawners.get(key);
+
+		if (spawner == null) {
+			spawner = new Spawner(world.getName(), x, y, z, capacity, now);
+			spawners.put(key, spawner);
+		}
+
+		long elapsed = now - spawner.lastTick;
+
+		if (elapsed > 0) {
+			spawner.tokens = Math.min(capacity, spawner.tokens + ((double) elapsed) / ticksPerSpawn);
+			spawner.lastTick = now;
+		}
+
+		spawner.decay(now, outputWindow);
+
+		spawner.type = entity.getType();
+
+		if (spawner.tokens < 1) {
+			spawner.throttled++;
+			this.admitted = null;
+			return false;
+		}
+
+		this.admitted = spawner;
+		this.admittedEntityId = entity.getEntityId();
+		return true;
+	}
+
+	/**
+	 * Charges the spawner which produced a mob whose spawn has gone through.
+	 * The spawn follows straight on from the spawner firing, so only the
+	 * last spawner allowed to produce a mob needs remembering.
+	 * @param entity The mob which has spawned.
+	 */
+	public void recordSpawn(Entity entity) {
+
+		Spawner spawner = this.admitted;
+
+		if (spawner != null && entity.getEntityId() == this.admittedEntityId) {
+			spawner.tokens = Math.max(0, spawner.tokens - 1);
+			spawner.recentOutput += 1;
+		}
+
+		this.admitted = null;
+	}
+
+	/**
+	 * Forgets spawners which have not fired for a long time.
+	 * @param now The current tick.
+	 */
+	private void forgetQuiet(long now) {
+
+		for (LongHashMap<Spawner> spawners : this.worldSpawners.values()) {
+			long[] quiet = null;
+			int quietCount = 0;
+
+			for (int i = 0; i < spawners.capacity(); i++) {
+				Spawner spawner = spawners.valueAt(i);
+
+				if (spawner == null || now - spawner.lastTick < FORGET_TICKS) {
+					continue;
+				}
+
+				if (quiet == null) {
+					quiet = new long[spawners.size()];
+				}
+
+				quiet[quietCount++] = spawners.keyAt(i);
+			}
+
+			for (int i = 0; i < quietCount; i++) {
+				spawners.remove(quiet[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the spawners with the most recent output.
+	 * @param count The number of spawners to return.
+	 * @param outputWindow The number of ticks over which recent output halves.
+	 * @param now The current tick.
+	 * @return Up to count spawners, busiest first.
+	 */
+	public List<Spawner> getHottest(int count, long outputWindow, long now) {
+
+		List<Spawner> all = new ArrayList<Spawner>();
+
+		for (LongHashMap<Spawner> spawners : this.worldSpawners.values()) {
+			for (int i = 0; i < spawners.capacity(); i++) {
+				Spawner spawner = spawners.valueAt(i);
+
+				if (spawner != null) {
+					spawner.decay(now, outputWindow);
+					all.add(spawner);
+				}
+			}
+		}
+
+		Collections.sort(all, new Comparator<Spawner>() {
+			public int compare(Spawner o1, Spawner o2) {
+				return Double.compare(o2.recentOutput, o1.recentOutput);
+			}
+		});
+
+		return all.size() > count ? all.subList(0, count) : all;
+	}
+
+	/**
+	 * Forgets the spawners for a world which is being unloaded.
+	 * @param world The world to forget.
+	 */
+	public void removeWorld(World world) {
+		this.worldSpawners.remove(world.getUID());
+	}
+}
@@ -38,6 +38,16 @@ public class StatusItem {
 	}
 	
 	
+	/**
+	 * Constructor which sets the entity and an already counted number of
+	 * surrounding entities.
+	 */
+	public StatusItem(HumanEntity entity, int nearbyEntityCount) {
+		this.entity = entity;
+		this.nearbyEntityCount = nearbyEntityCount;
+	}
+	
+	
 	/**
 	 * Returns the Bukkit entity for which this object provides status for.
 	 * @return The bukkit entity for which this object provides status for.
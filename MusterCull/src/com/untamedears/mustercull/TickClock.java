@@ -0,0 +1,28 @@
+package com.untamedears.mustercull;
+
+/**
+ * Counts server ticks, for expiring cached state by tick rather than by wall time.
+ */
+public class TickClock implements Runnable {
+
+	/**
+	 * The number of ticks counted so far.
+	 */
+	private volatile long tick = 0;
+
+	/**
+	 * Repeating method which advances the clock by one tick.
+	 */
+	@Override
+	public void run() {
+		this.tick++;
+	}
+
+	/**
+	 * Returns the number of ticks counted so far.
+	 * @return The current tick.
+	 */
+	public long getTick() {
+		return this.tick;
+	}
+}
@@ -0,0 +1,59 @@
+package com.untamedears.mustercull;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+/**
+ * This class provides event handlers for chunks and worlds.
+ */
+public class WorldListener extends Listener {
+
+	/**
+	 * This constructor wraps the parent Listener's constructor.
+	 * @param pluginInstance A reference to the plug-in instance.
+	 */
+	public WorldListener(MusterCull pluginInstance) {
+		super(pluginInstance);
+	}
+
+	/**
+	 * This handler is called when a chunk has been loaded.
+	 * @param event A reference to the associated Bukkit event.
+	 */
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void onChunkLoad(ChunkLoadEvent event) {
+		getPluginInstance().getMobCounter().addChunk(event.getChunk());
+		getPluginInstance().getEntityIndex().addChunk(event.getChunk());
+		getPluginInstance().getSpawnChunks().addChunk(event.getChunk());
+	}
+
+	/**
+	 * This handler is called when a chunk is being unloaded.
+	 * @param event A reference to the associated Bukkit event.
+	 */
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled=true)
+	public void onChunkUnload(ChunkUnloadEvent event) {
+		getPluginInstance().getMobCounter().removeChunk(event.getChunk());
+		getPluginInstance().getEntityIndex().removeChunk(event.getChunk());
+		getPluginInstance().getPendingDeaths().removeChunk(event.getChunk());
+		getPluginInstance().getSpawnChunks().removeChunk(event.getChunk());
+	}
+
+	/**
+	 * This handler is called when a world is being unloaded.
+	 * @param event A reference to the associated Bukkit event.
+	 */
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled=true)
+	public void onWorldUnload(WorldUnloadEvent event) {
+		getPluginInstance().getMobCounter().removeWorld(event.getWorld());
+		getPluginInstance().getEntityIndex().removeWorld(event.getWorld());
+		getPluginInstance().getVerdictCache().removeWorld(event.getWorld());
+		getPluginInstance().getSpawnerRegistry().removeWorld(event.getWorld());
+		getPluginInstance().getSpawnRateTracker().removeWorld(event.getWorld());
+		getPluginInstance().getPendingDeaths().removeWorld(event.getWorld());
+		getPluginInstance().getSpawnChunks().removeWorld(event.getWorld());
+	}
+}
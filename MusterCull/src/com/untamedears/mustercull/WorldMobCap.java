@@ -0,0 +1,52 @@
+package com.untamedears.mustercull;
+
+/**
+ * The hard mob cap for a single world.
+ */
+public class WorldMobCap {
+
+	/**
+	 * The maximum number of mobs allowed in the world.
+	 */
+	private final int maxMob;
+
+	/**
+	 * How many mobs the cap is lowered by for each player in the world.
+	 */
+	private final int playerMultiplier;
+
+	/**
+	 * Constructor which takes the cap and player multiplier.
+	 * @param maxMob The maximum number of mobs allowed in the world.
+	 * @param playerMultiplier How many mobs the cap is lowered by for each player in the world.
+	 */
+	public WorldMobCap(int maxMob, int playerMultiplier) {
+		this.maxMob = maxMob;
+		this.playerMultiplier = playerMultiplier;
+	}
+
+	/**
+	 * Returns the maximum number of mobs allowed in the world.
+	 * @return The maximum number of mobs allowed in the world.
+	 */
+	public int getMaxMob() {
+		return this.maxMob;
+	}
+
+	/**
+	 * Returns how many mobs the cap is lowered by for each player in the world.
+	 * @return How many mobs the cap is lowered by for each player.
+	 */
+	public int getPlayerMultiplier() {
+		return this.playerMultiplier;
+	}
+
+	/**
+	 * Returns the cap with a number of players in the world.
+	 * @param playerCount The number of players in the world.
+	 * @return The number of mobs allowed, never less than zero.
+	 */
+	public int getLimit(int playerCount) {
+		return Math.max(0, this.maxMob - this.playerMultiplier * playerCount);
+	}
+}